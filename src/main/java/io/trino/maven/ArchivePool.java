@@ -0,0 +1,82 @@
+package io.trino.maven;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Read-only channels to archives, opened when first needed and kept in least recently used order. Once more than the
+ * maximum number are open, the least recently used channel is closed. A channel holds nothing but a file descriptor,
+ * so reopening an archive is cheap; its central directory is read separately, through {@link ZipDirectory}.
+ */
+final class ArchivePool
+        implements Closeable
+{
+    private final int maximumOpen;
+    private final LinkedHashMap<Path, FileChannel> channels = new LinkedHashMap<>(16, 0.75f, true);
+    private int opened;
+
+    ArchivePool(int maximumOpen)
+    {
+        if (maximumOpen < 1) {
+            throw new IllegalArgumentException("maximumOpen must be at least 1");
+        }
+        this.maximumOpen = maximumOpen;
+    }
+
+    synchronized FileChannel channel(Path archive)
+            throws IOException
+    {
+        FileChannel channel = channels.get(archive);
+        if (channel != null) {
+            return channel;
+        }
+        if (channels.size() >= maximumOpen) {
+            Iterator<FileChannel> leastRecentlyUsed = channels.values().iterator();
+            FileChannel evicted = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            evicted.close();
+        }
+        channel = FileChannel.open(archive, READ);
+        channels.put(archive, channel);
+        opened++;
+        return channel;
+    }
+
+    /**
+     * Returns how many times an archive was opened, counting reopening after eviction.
+     */
+    synchronized int opened()
+    {
+        return opened;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        UncheckedIOException failure = null;
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                if (failure == null) {
+                    failure = new UncheckedIOException(e);
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        channels.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -2,16 +2,32 @@ package io.trino.maven;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyFilter;
 import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.util.filter.ScopeDependencyFilter;
 
 import javax.inject.Inject;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static java.util.stream.Collectors.toList;
+import static org.apache.maven.RepositoryUtils.toArtifact;
+import static org.apache.maven.RepositoryUtils.toDependency;
+import static org.eclipse.aether.util.artifact.JavaScopes.PROVIDED;
+import static org.eclipse.aether.util.artifact.JavaScopes.SYSTEM;
+import static org.eclipse.aether.util.artifact.JavaScopes.TEST;
+
 /**
  * Base for mojos that resolve artifacts through the Maven repository system, holding the shared project, session and
  * repository-system injection along with convenience accessors for the repository session and remote repositories.
@@ -37,4 +53,58 @@ abstract class BaseTrinoPluginMojo
     {
         return project.getRemoteProjectRepositories();
     }
+
+    /**
+     * Resolves the runtime classpath transitively instead of relying on the resolution scope requested by this Mojo.
+     * This works around <a href="https://issues.apache.org/jira/browse/MNG-8041">MNG-8041</a>, where a dependency
+     * declared directly with {@code test} (or {@code provided}) scope masks the same artifact required transitively at
+     * runtime (for example {@code io.airlift:log}, needed via {@code io.airlift:bootstrap}). Dropping the test-scoped
+     * direct dependencies before collection lets the surviving compile/runtime path be included in the bundle.
+     */
+    protected List<org.eclipse.aether.artifact.Artifact> resolveRuntimeScopeTransitively(BuildMetrics metrics)
+            throws MojoExecutionException
+    {
+        RepositorySystemSession repositorySession = repositorySession();
+        DependencyFilter runtimeFilter = new ScopeDependencyFilter(SYSTEM, PROVIDED, TEST);
+        List<Dependency> dependencies = new ArrayList<>();
+        for (org.apache.maven.model.Dependency dependency : project.getDependencies()) {
+            String scope = dependency.getScope();
+            // Drop non-runtime direct dependencies before collection. Leaving provided/system-scoped direct
+            // declarations in lets conflict mediation prefer the wrong artifact before the ScopeDependencyFilter runs.
+            if (TEST.equals(scope) || PROVIDED.equals(scope) || SYSTEM.equals(scope)) {
+                continue;
+            }
+            dependencies.add(toDependency(dependency, repositorySession.getArtifactTypeRegistry()));
+        }
+
+        List<Dependency> managedDependencies = new ArrayList<>();
+        if (project.getDependencyManagement() != null) {
+            for (org.apache.maven.model.Dependency dependency : project.getDependencyManagement().getDependencies()) {
+                managedDependencies.add(toDependency(dependency, repositorySession.getArtifactTypeRegistry()));
+            }
+        }
+
+        CollectRequest collectRequest = new CollectRequest();
+        collectRequest.setRootArtifact(toArtifact(project.getArtifact()));
+        collectRequest.setRepositories(remoteRepositories());
+        collectRequest.setDependencies(dependencies);
+        collectRequest.setManagedDependencies(managedDependencies);
+
+        DependencyRequest dependencyRequest = new DependencyRequest(collectRequest, runtimeFilter);
+        ResolutionCache.Key key = new ResolutionCache.Key("runtime", collectRequest.getRootArtifact(), null, dependencies, managedDependencies, collectRequest.getRepositories());
+        try {
+            return ResolutionCache.get(session, key, () -> repositorySystem.resolveDependencies(repositorySession, dependencyRequest)
+                    .getArtifactResults()
+                    .stream()
+                    .map(ArtifactResult::getArtifact)
+                    .collect(toList()), metrics);
+        }
+        catch (DependencyResolutionException e) {
+            throw new MojoExecutionException("Failed to resolve runtime dependencies.", e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while resolving runtime dependencies", e);
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package io.trino.maven;
+
+import org.apache.maven.execution.MavenSession;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Wall time per phase and counters of a single mojo execution. Both may be updated from several threads. A finished
+ * execution is published, as plain JDK collections, into the data of the repository session: that is shared by every
+ * project and class realm of the build, so {@link BuildMetricsReporter} sees all executions of the reactor however
+ * the plugin realms were set up.
+ */
+final class BuildMetrics
+{
+    static final String SESSION_DATA_KEY = "io.trino.maven.BuildMetrics";
+
+    private final MavenSession session;
+    private final String project;
+    private final String goal;
+    private final long start = System.nanoTime();
+    private final Map<String, LongAdder> phases = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+
+    /**
+     * A phase being timed; closing it adds the elapsed time to the phase.
+     */
+    interface Phase
+            extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+
+    private BuildMetrics(MavenSession session, String project, String goal)
+    {
+        this.session = requireNonNull(session, "session is null");
+        this.project = requireNonNull(project, "project is null");
+        this.goal = requireNonNull(goal, "goal is null");
+    }
+
+    static BuildMetrics start(MavenSession session, String goal)
+    {
+        return new BuildMetrics(session, session.getCurrentProject().getId(), goal);
+    }
+
+    Phase phase(String name)
+    {
+        long phaseStart = System.nanoTime();
+        return () -> phases.computeIfAbsent(name, ignored -> new LongAdder()).add(System.nanoTime() - phaseStart);
+    }
+
+    void count(String name, long value)
+    {
+        counters.computeIfAbsent(name, ignored -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Wraps a stream so that the bytes read through it are added to a counter.
+     */
+    InputStream counting(InputStream in, String counter)
+    {
+        LongAdder bytes = counters.computeIfAbsent(counter, ignored -> new LongAdder());
+        return new FilterInputStream(in)
+        {
+            @Override
+            public int read()
+                    throws IOException
+            {
+                int value = super.read();
+                if (value >= 0) {
+                    bytes.increment();
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length)
+                    throws IOException
+            {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    bytes.add(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long count)
+                    throws IOException
+            {
+                long skipped = super.skip(count);
+                bytes.add(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * Records the wall time of the execution and publishes it for the end-of-build report.
+     */
+    void finish()
+    {
+        Map<String, Object> execution = new LinkedHashMap<>();
+        execution.put("project", project);
+        execution.put("goal", goal);
+        execution.put("wallNanos", System.nanoTime() - start);
+        execution.put("phases", snapshot(phases));
+        execution.put("counters", snapshot(counters));
+        executions(session).add(execution);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Queue<Map<String, Object>> executions(MavenSession session)
+    {
+        return (Queue<Map<String, Object>>) session.getRepositorySession().getData().computeIfAbsent(SESSION_DATA_KEY, ConcurrentLinkedQueue::new);
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> values)
+    {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        values.forEach((name, value) -> snapshot.put(name, value.sum()));
+        return snapshot;
+    }
+}
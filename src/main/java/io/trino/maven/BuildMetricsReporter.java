@@ -0,0 +1,208 @@
+package io.trino.maven;
+
+import io.trino.maven.ResolutionCache.Stats;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.newBufferedWriter;
+
+/**
+ * Reports the {@link BuildMetrics} of all trino-plugin goals at the end of a build run with
+ * {@code -Dtrino.plugin.metrics=true}. The executions of the whole reactor are written to
+ * {@code target/trino-plugin-metrics.json} of the top-level project, and summarized in the build log. Whether or not
+ * metrics are enabled, the hits of the {@link ResolutionCache} of the session and the time they saved are logged in
+ * one line: at info level if there were any, and at debug level otherwise.
+ */
+@Named("trino-plugin-metrics")
+@Singleton
+public class BuildMetricsReporter
+        extends AbstractMavenLifecycleParticipant
+{
+    static final String METRICS_PROPERTY = "trino.plugin.metrics";
+    static final String METRICS_FILE = "trino-plugin-metrics.json";
+
+    private static final int SLOWEST_EXECUTIONS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(BuildMetricsReporter.class);
+
+    @Override
+    public void afterSessionEnd(MavenSession session)
+    {
+        ResolutionCache.stats(session).ifPresent(this::logResolutionCache);
+        if (!isEnabled(session)) {
+            return;
+        }
+        List<Map<String, Object>> executions = new ArrayList<>(BuildMetrics.executions(session));
+        if (executions.isEmpty()) {
+            return;
+        }
+        // Executions are published as they finish, which in a parallel build varies from run to run
+        executions.sort(Comparator.comparing((Map<String, Object> execution) -> (String) execution.get("project"))
+                .thenComparing(execution -> (String) execution.get("goal")));
+
+        MavenProject topLevelProject = session.getTopLevelProject();
+        Path metricsFile = Path.of(topLevelProject.getBuild().getDirectory(), METRICS_FILE);
+        try {
+            Files.createDirectories(metricsFile.getParent());
+            try (Writer writer = newBufferedWriter(metricsFile, UTF_8)) {
+                writeJson(writer, Map.of("executions", executions), "");
+                writer.write("\n");
+            }
+        }
+        catch (IOException e) {
+            log.warn("Failed to write Trino plugin build metrics to {}", metricsFile, e);
+        }
+        logSummary(executions, metricsFile);
+    }
+
+    private static boolean isEnabled(MavenSession session)
+    {
+        String value = session.getUserProperties().getProperty(METRICS_PROPERTY, session.getSystemProperties().getProperty(METRICS_PROPERTY));
+        return value != null && (value.isEmpty() || Boolean.parseBoolean(value));
+    }
+
+    private void logResolutionCache(Stats stats)
+    {
+        String message = "Trino plugin resolution cache: {} hits, {} misses, {} saved";
+        if (stats.hits() > 0) {
+            log.info(message, stats.hits(), stats.misses(), duration(stats.savedNanos()));
+        }
+        else {
+            log.debug(message, stats.hits(), stats.misses(), duration(stats.savedNanos()));
+        }
+    }
+
+    /**
+     * Logs, per goal, the number of executions, their total wall time and the totals of every phase and counter,
+     * followed by the slowest executions.
+     */
+    private void logSummary(List<Map<String, Object>> executions, Path metricsFile)
+    {
+        Map<String, GoalTotals> goals = new TreeMap<>();
+        for (Map<String, Object> execution : executions) {
+            goals.computeIfAbsent((String) execution.get("goal"), ignored -> new GoalTotals()).add(execution);
+        }
+
+        log.info("Trino plugin build metrics ({} executions, written to {})", executions.size(), metricsFile);
+        goals.forEach((goal, totals) -> {
+            log.info("  {}: {} executions, {}", goal, totals.executions, duration(totals.wallNanos));
+            totals.phases.forEach((phase, nanos) -> log.info("    {} {}", padded(phase), duration(nanos)));
+            totals.counters.forEach((counter, value) -> log.info("    {} {}", padded(counter), value));
+        });
+
+        log.info("  slowest executions:");
+        executions.stream()
+                .sorted(Comparator.comparing((Map<String, Object> execution) -> (Long) execution.get("wallNanos")).reversed())
+                .limit(SLOWEST_EXECUTIONS)
+                .forEach(execution -> log.info("    {} {} {}", duration((Long) execution.get("wallNanos")), execution.get("goal"), execution.get("project")));
+    }
+
+    private static String padded(String name)
+    {
+        return "%-24s".formatted(name);
+    }
+
+    private static String duration(long nanos)
+    {
+        return "%.3f s".formatted(nanos / 1e9);
+    }
+
+    private static final class GoalTotals
+    {
+        private int executions;
+        private long wallNanos;
+        private final Map<String, Long> phases = new TreeMap<>();
+        private final Map<String, Long> counters = new TreeMap<>();
+
+        @SuppressWarnings("unchecked")
+        private void add(Map<String, Object> execution)
+        {
+            executions++;
+            wallNanos += (Long) execution.get("wallNanos");
+            ((Map<String, Long>) execution.get("phases")).forEach((phase, nanos) -> phases.merge(phase, nanos, Long::sum));
+            ((Map<String, Long>) execution.get("counters")).forEach((counter, value) -> counters.merge(counter, value, Long::sum));
+        }
+    }
+
+    /**
+     * Writes the maps, lists, strings and numbers that executions are published as.
+     */
+    private static void writeJson(Writer writer, Object value, String indent)
+            throws IOException
+    {
+        switch (value) {
+            case Map<?, ?> map -> {
+                if (map.isEmpty()) {
+                    writer.write("{}");
+                    return;
+                }
+                writer.write("{\n");
+                String separator = "";
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writer.write(separator);
+                    writer.write(indent + "  ");
+                    writeString(writer, entry.getKey().toString());
+                    writer.write(": ");
+                    writeJson(writer, entry.getValue(), indent + "  ");
+                    separator = ",\n";
+                }
+                writer.write("\n" + indent + "}");
+            }
+            case List<?> list -> {
+                writer.write("[\n");
+                String separator = "";
+                for (Object element : list) {
+                    writer.write(separator);
+                    writer.write(indent + "  ");
+                    writeJson(writer, element, indent + "  ");
+                    separator = ",\n";
+                }
+                writer.write("\n" + indent + "]");
+            }
+            case Number number -> writer.write(number.toString());
+            default -> writeString(writer, value.toString());
+        }
+    }
+
+    private static void writeString(Writer writer, String value)
+            throws IOException
+    {
+        StringBuilder escaped = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append("\\u%04x".formatted((int) c));
+                    }
+                    else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        writer.write(escaped.append('"').toString());
+    }
+}
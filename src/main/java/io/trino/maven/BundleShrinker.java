@@ -0,0 +1,424 @@
+package io.trino.maven;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.mismatch;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newBufferedWriter;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Removes the classes of bundled dependency jars that the plugin cannot reach. Reachability is computed at class
+ * level: starting from the providers of every {@code META-INF/services} file, which include the plugin class, and from
+ * the classes matching the keep rules, a class reaches every class its bytecode names, through its declarations,
+ * instructions, constants and annotations. Resources are kept at root level, under {@code META-INF}, and in packages
+ * that keep a class; other resources go with the classes of their package.
+ * <p>
+ * A class that loads classes by a name it computes, through {@code Class.forName}, {@code ClassLoader.loadClass} or
+ * {@code Lookup.findClass}, may reach classes its bytecode does not name, so a jar with such a reachable class is kept
+ * whole, unless reflection is trusted, in which case it is only reported. A call with a constant name reaches the named
+ * class. Signed jars and jars with classes that cannot be read are kept whole too.
+ */
+final class BundleShrinker
+        implements Closeable
+{
+    private static final String SERVICES = "META-INF/services/";
+
+    private final List<Pattern> keepRules;
+    private final boolean trustReflection;
+    private final List<Jar> jars = new ArrayList<>();
+    // class internal name -> locations, including the versions of multi-release jars
+    private final Map<String, List<ClassLocation>> classes = new HashMap<>();
+    private final Set<String> reachable = new HashSet<>();
+    private final Queue<String> pending = new ArrayDeque<>();
+    private final Map<String, String> reflectiveClasses = new TreeMap<>();
+
+    private static final class Jar
+    {
+        private final String name;
+        private final Path file;
+        private final boolean shrinkable;
+        private final FileChannel channel;
+        private final List<ZipDirectory.Entry> entries;
+        private Optional<String> keptWholeReason = Optional.empty();
+        private final List<String> removedEntries = new ArrayList<>();
+        private long removedBytes;
+        private Path shrunkFile;
+
+        private Jar(String name, Path file, boolean shrinkable, FileChannel channel, List<ZipDirectory.Entry> entries)
+        {
+            this.name = name;
+            this.file = file;
+            this.shrinkable = shrinkable;
+            this.channel = channel;
+            this.entries = entries;
+        }
+    }
+
+    private record ClassLocation(Jar jar, ZipDirectory.Entry entry) {}
+
+    /**
+     * @param keepRules class names to keep, where {@code *} stands for any part of a name within a package and
+     * {@code **} for any part of a name, such as {@code com.example.**}
+     */
+    BundleShrinker(List<String> keepRules, boolean trustReflection)
+    {
+        this.keepRules = requireNonNull(keepRules, "keepRules is null").stream()
+                .map(BundleShrinker::keepRulePattern)
+                .toList();
+        this.trustReflection = trustReflection;
+    }
+
+    /**
+     * Adds a bundled jar, which is shrunk if it is shrinkable; the classes of the others are analyzed, but kept.
+     */
+    void addJar(String name, Path file, boolean shrinkable)
+            throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, READ);
+        Jar jar;
+        try {
+            jar = new Jar(name, file, shrinkable, channel, ZipDirectory.read(channel));
+        }
+        catch (IOException | RuntimeException e) {
+            try (channel) {
+                throw e;
+            }
+        }
+        jars.add(jar);
+        for (ZipDirectory.Entry entry : jar.entries) {
+            if (isSignature(entry.name()) && shrinkable) {
+                jar.keptWholeReason = Optional.of("signed");
+            }
+            ClassReferences.className(entry.name()).ifPresent(className -> classes.computeIfAbsent(className, ignored -> new ArrayList<>()).add(new ClassLocation(jar, entry)));
+        }
+    }
+
+    /**
+     * Computes the reachable classes, and writes the shrunk jars to the directory. A shrunk jar that already exists
+     * with the same content is left as it is.
+     */
+    void shrink(Path directory, Optional<FileTime> lastModifiedTime)
+            throws IOException
+    {
+        for (Jar jar : jars) {
+            for (ZipDirectory.Entry entry : jar.entries) {
+                if (entry.name().startsWith(SERVICES) && entry.name().indexOf('/', SERVICES.length()) < 0 && !entry.isDirectory()) {
+                    for (String provider : providers(jar, entry)) {
+                        reach(provider.replace('.', '/'));
+                    }
+                }
+            }
+        }
+        for (String className : classes.keySet()) {
+            String binaryName = className.replace('/', '.');
+            if (keepRules.stream().anyMatch(rule -> rule.matcher(binaryName).matches())) {
+                reach(className);
+            }
+        }
+        for (Jar jar : jars) {
+            if (jar.keptWholeReason.isPresent()) {
+                keepWhole(jar);
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            String className = pending.remove();
+            for (ClassLocation location : classes.get(className)) {
+                analyze(className, location);
+            }
+        }
+
+        Set<String> packages = new HashSet<>();
+        for (String className : reachable) {
+            packages.add(packageName(className));
+        }
+        for (Jar jar : jars) {
+            if (jar.shrinkable && jar.keptWholeReason.isEmpty()) {
+                shrink(jar, packages, directory, lastModifiedTime);
+            }
+        }
+    }
+
+    /**
+     * Returns the file to bundle for the jar: the shrunk jar, or the jar itself if nothing was removed from it.
+     */
+    Path file(String name)
+    {
+        for (Jar jar : jars) {
+            if (jar.name.equals(name)) {
+                return jar.shrunkFile == null ? jar.file : jar.shrunkFile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown jar " + name);
+    }
+
+    int shrunkJars()
+    {
+        return (int) jars.stream().filter(jar -> jar.shrunkFile != null).count();
+    }
+
+    int removedEntries()
+    {
+        return jars.stream().mapToInt(jar -> jar.removedEntries.size()).sum();
+    }
+
+    long removedBytes()
+    {
+        return jars.stream().mapToLong(jar -> jar.removedBytes).sum();
+    }
+
+    /**
+     * Returns the reachable classes that load classes by computed names, each with the jar that holds it.
+     */
+    Map<String, String> reflectiveClasses()
+    {
+        return reflectiveClasses;
+    }
+
+    /**
+     * Returns the shrinkable jars that were kept whole, with the reason.
+     */
+    Map<String, String> keptWholeJars()
+    {
+        Map<String, String> keptWhole = new TreeMap<>();
+        for (Jar jar : jars) {
+            jar.keptWholeReason.ifPresent(reason -> keptWhole.put(jar.name, reason));
+        }
+        return keptWhole;
+    }
+
+    /**
+     * Writes a report with, for every shrinkable jar, whether it was kept whole and why, or the entries removed from it.
+     */
+    void writeReport(Path file)
+            throws IOException
+    {
+        createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = newBufferedWriter(file, UTF_8)) {
+            writer.write("# Removed %d entries, %d bytes, from %d jars; %d of %d classes reachable\n"
+                    .formatted(removedEntries(), removedBytes(), shrunkJars(), reachable.size(), classes.size()));
+            Map<String, Jar> sortedJars = new TreeMap<>();
+            jars.stream().filter(jar -> jar.shrinkable).forEach(jar -> sortedJars.put(jar.name, jar));
+            for (Jar jar : sortedJars.values()) {
+                if (jar.keptWholeReason.isPresent()) {
+                    writer.write("jar %s kept whole: %s\n".formatted(jar.name, jar.keptWholeReason.orElseThrow()));
+                    continue;
+                }
+                writer.write("jar %s %d of %d entries removed, %d bytes\n".formatted(jar.name, jar.removedEntries.size(), jar.entries.size(), jar.removedBytes));
+                for (String entry : jar.removedEntries) {
+                    writer.write("removed %s\n".formatted(entry));
+                }
+            }
+            for (Entry<String, String> reflective : reflectiveClasses.entrySet()) {
+                writer.write("reflection %s in %s\n".formatted(reflective.getKey(), reflective.getValue()));
+            }
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        IOException failure = null;
+        for (Jar jar : jars) {
+            try {
+                jar.channel.close();
+            }
+            catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void reach(String className)
+    {
+        if (classes.containsKey(className) && reachable.add(className)) {
+            pending.add(className);
+        }
+    }
+
+    private void keepWhole(Jar jar)
+    {
+        for (ZipDirectory.Entry entry : jar.entries) {
+            ClassReferences.className(entry.name()).ifPresent(this::reach);
+        }
+    }
+
+    private void analyze(String className, ClassLocation location)
+            throws IOException
+    {
+        Jar jar = location.jar();
+        ClassReferences references;
+        try (InputStream in = ZipDirectory.openEntry(jar.channel, location.entry())) {
+            references = ClassReferences.read(in.readAllBytes());
+        }
+        catch (RuntimeException e) {
+            // Typically a class file version newer than ASM supports; its references are unknown
+            if (jar.shrinkable && jar.keptWholeReason.isEmpty()) {
+                jar.keptWholeReason = Optional.of("unreadable class " + location.entry().name());
+                keepWhole(jar);
+            }
+            return;
+        }
+        references.references().forEach(this::reach);
+        if (references.loadsClassesByName()) {
+            reflectiveClasses.putIfAbsent(className.replace('/', '.'), jar.name);
+            if (!trustReflection && jar.shrinkable && jar.keptWholeReason.isEmpty()) {
+                jar.keptWholeReason = Optional.of("reflection in " + className.replace('/', '.'));
+                keepWhole(jar);
+            }
+        }
+    }
+
+    private void shrink(Jar jar, Set<String> packages, Path directory, Optional<FileTime> lastModifiedTime)
+            throws IOException
+    {
+        Map<String, ZipDirectory.Entry> kept = new LinkedHashMap<>();
+        for (ZipDirectory.Entry entry : jar.entries) {
+            if (isKept(entry, packages)) {
+                kept.put(entry.name(), entry);
+            }
+            else if (!entry.isDirectory()) {
+                jar.removedEntries.add(entry.name());
+                jar.removedBytes += entry.compressedSize();
+            }
+        }
+        if (jar.removedEntries.isEmpty()) {
+            return;
+        }
+        // Directories that no longer hold anything go as well
+        Set<String> directories = new HashSet<>();
+        for (String name : kept.keySet()) {
+            for (int separator = name.indexOf('/'); separator >= 0 && separator < name.length() - 1; separator = name.indexOf('/', separator + 1)) {
+                directories.add(name.substring(0, separator + 1));
+            }
+        }
+        kept.values().removeIf(entry -> entry.isDirectory() && !directories.contains(entry.name()));
+
+        Path shrunkFile = directory.resolve(jar.name).normalize();
+        if (!shrunkFile.startsWith(directory.normalize())) {
+            throw new IOException("Jar %s is outside of the directory for shrunk jars".formatted(jar.name));
+        }
+        createDirectories(shrunkFile.getParent());
+        Path temporary = createTempFile(shrunkFile.getParent(), shrunkFile.getFileName().toString(), ".tmp");
+        try {
+            try (PluginBundleWriter writer = new PluginBundleWriter(temporary, lastModifiedTime)) {
+                for (ZipDirectory.Entry entry : kept.values()) {
+                    writer.copyEntry(jar.channel, entry);
+                }
+            }
+            // Leave an unchanged jar alone, so that incremental builds see it as unchanged
+            if (!isRegularFile(shrunkFile) || mismatch(temporary, shrunkFile) >= 0) {
+                move(temporary, shrunkFile, ATOMIC_MOVE, REPLACE_EXISTING);
+            }
+        }
+        finally {
+            deleteIfExists(temporary);
+        }
+        jar.shrunkFile = shrunkFile;
+    }
+
+    private boolean isKept(ZipDirectory.Entry entry, Set<String> packages)
+    {
+        if (entry.isDirectory()) {
+            return true;
+        }
+        Optional<String> className = ClassReferences.className(entry.name());
+        if (className.isPresent()) {
+            return reachable.contains(className.orElseThrow());
+        }
+        String name = entry.name();
+        if (name.startsWith("META-INF/") || name.indexOf('/') < 0) {
+            return true;
+        }
+        // Resources, including package-info classes, go with the classes of their package
+        return packages.contains(name.substring(0, name.lastIndexOf('/')));
+    }
+
+    private static List<String> providers(Jar jar, ZipDirectory.Entry entry)
+            throws IOException
+    {
+        List<String> providers = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ZipDirectory.openEntry(jar.channel, entry), UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int comment = line.indexOf('#');
+                String provider = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (!provider.isEmpty()) {
+                    providers.add(provider);
+                }
+            }
+        }
+        return providers;
+    }
+
+    private static String packageName(String className)
+    {
+        int separator = className.lastIndexOf('/');
+        return separator < 0 ? "" : className.substring(0, separator);
+    }
+
+    private static boolean isSignature(String name)
+    {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) >= 0) {
+            return false;
+        }
+        return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+    }
+
+    private static Pattern keepRulePattern(String rule)
+    {
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < rule.length(); i++) {
+            char c = rule.charAt(i);
+            if (c == '*' && i + 1 < rule.length() && rule.charAt(i + 1) == '*') {
+                pattern.append(".*");
+                i++;
+            }
+            else if (c == '*') {
+                pattern.append("[^.]*");
+            }
+            else {
+                pattern.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(pattern.toString());
+    }
+}
@@ -0,0 +1,119 @@
+package io.trino.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.OptionalLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Persistent record of the CRC-32 of files that do not change once written, such as the jars in the local repository,
+ * so that a stored bundle entry for one of them is only read to be copied. Every file has an entry of its own, named
+ * after a hash of its path and identified by the path, size and modification time it was computed for; an entry for
+ * any other version of the file is ignored and eventually replaced.
+ * <p>
+ * Entries are written to a temporary file and atomically moved into place, so builds running concurrently, in this or
+ * in other processes, never see a partial entry. Writers racing for the same entry write the same checksum, so it does
+ * not matter which of them wins.
+ */
+final class ChecksumCache
+{
+    private static final int MAGIC = 0x54504343;
+    private static final int VERSION = 1;
+
+    private final Path directory;
+    private final Path cachedRoot;
+
+    /**
+     * Creates a cache in the directory for the files under {@code cachedRoot}; files elsewhere are never cached.
+     */
+    ChecksumCache(Path directory, Path cachedRoot)
+    {
+        this.directory = requireNonNull(directory, "directory is null").toAbsolutePath();
+        this.cachedRoot = requireNonNull(cachedRoot, "cachedRoot is null").toAbsolutePath().normalize();
+    }
+
+    boolean isCached(Path file)
+    {
+        return file.toAbsolutePath().normalize().startsWith(cachedRoot);
+    }
+
+    /**
+     * Returns the checksum recorded for the file with the given attributes, if any.
+     */
+    OptionalLong get(Path file, BasicFileAttributes attributes)
+            throws IOException
+    {
+        String path = file.toAbsolutePath().normalize().toString();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(newInputStream(entryFile(path)), 512))) {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != VERSION
+                    || !in.readUTF().equals(path)
+                    || in.readLong() != attributes.size()
+                    || in.readLong() != attributes.lastModifiedTime().toMillis()) {
+                return OptionalLong.empty();
+            }
+            return OptionalLong.of(in.readLong());
+        }
+        catch (NoSuchFileException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    void put(Path file, BasicFileAttributes attributes, long crc)
+            throws IOException
+    {
+        String path = file.toAbsolutePath().normalize().toString();
+        Path entryFile = entryFile(path);
+        createDirectories(entryFile.getParent());
+        Path temporary = createTempFile(entryFile.getParent(), entryFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(newOutputStream(temporary), 512))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(path);
+                out.writeLong(attributes.size());
+                out.writeLong(attributes.lastModifiedTime().toMillis());
+                out.writeLong(crc);
+            }
+            move(temporary, entryFile, ATOMIC_MOVE, REPLACE_EXISTING);
+        }
+        finally {
+            deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Returns the entry for a path, spread over 256 subdirectories to keep directories small.
+     */
+    private Path entryFile(String path)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        String hash = HexFormat.of().formatHex(digest.digest(path.getBytes(UTF_8)));
+        return directory.resolve(hash.substring(0, 2)).resolve(hash.substring(2) + ".crc");
+    }
+}
@@ -0,0 +1,219 @@
+package io.trino.maven;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.copyOf;
+
+/**
+ * Streams a class file only as far as the end of its interfaces table, which is all {@link ClassInfo} needs. The
+ * fields, methods and attributes that make up most of a class file are never read, and of the constant pool only the
+ * class names are decoded.
+ */
+final class ClassHeaderReader
+{
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private ClassHeaderReader() {}
+
+    static ClassInfo read(InputStream input)
+            throws IOException
+    {
+        return read(input, null);
+    }
+
+    /**
+     * Reads the class header. When a reference filter is given and the class does not pass it, {@code null} is returned
+     * without decoding any name. The stream may be read ahead past the header and is left open.
+     */
+    static ClassInfo read(InputStream input, ReferenceFilter referenceFilter)
+            throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor_version and major_version
+        in.skipNBytes(4);
+
+        // Only the UTF-8 entries are kept, packed into one buffer, and only class entries remember what they point to
+        int constantPoolCount = in.readUnsignedShort();
+        int[] utf8Offsets = new int[constantPoolCount];
+        int[] utf8Lengths = new int[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        byte[] utf8 = new byte[1024];
+        int utf8Size = 0;
+        for (int index = 1; index < constantPoolCount; index++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8 -> {
+                    int length = in.readUnsignedShort();
+                    if (utf8Size + length > utf8.length) {
+                        utf8 = copyOf(utf8, Math.max(utf8.length * 2, utf8Size + length));
+                    }
+                    in.readFully(utf8, utf8Size, length);
+                    utf8Offsets[index] = utf8Size;
+                    utf8Lengths[index] = length;
+                    utf8Size += length;
+                }
+                case CONSTANT_CLASS -> classNameIndexes[index] = in.readUnsignedShort();
+                case CONSTANT_STRING, CONSTANT_METHOD_TYPE, CONSTANT_MODULE, CONSTANT_PACKAGE -> in.skipNBytes(2);
+                case CONSTANT_METHOD_HANDLE -> in.skipNBytes(3);
+                case CONSTANT_INTEGER, CONSTANT_FLOAT, CONSTANT_FIELD_REF, CONSTANT_METHOD_REF, CONSTANT_INTERFACE_METHOD_REF,
+                        CONSTANT_NAME_AND_TYPE, CONSTANT_DYNAMIC, CONSTANT_INVOKE_DYNAMIC -> in.skipNBytes(4);
+                case CONSTANT_LONG, CONSTANT_DOUBLE -> {
+                    in.skipNBytes(8);
+                    // 8-byte constants take up two entries
+                    index++;
+                }
+                default -> throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        int thisClass = in.readUnsignedShort();
+        int superClass = in.readUnsignedShort();
+        int[] interfaceIndexes = new int[in.readUnsignedShort()];
+        for (int i = 0; i < interfaceIndexes.length; i++) {
+            interfaceIndexes[i] = in.readUnsignedShort();
+        }
+        if (referenceFilter != null && !referenceFilter.matches(classNameIndexes, thisClass, superClass, interfaceIndexes, utf8, utf8Offsets, utf8Lengths)) {
+            return null;
+        }
+
+        String name = className(thisClass, classNameIndexes, utf8, utf8Offsets, utf8Lengths);
+        String superName = superClass == 0 ? null : className(superClass, classNameIndexes, utf8, utf8Offsets, utf8Lengths);
+        String[] interfaces = new String[interfaceIndexes.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = className(interfaceIndexes[i], classNameIndexes, utf8, utf8Offsets, utf8Lengths);
+        }
+        return new ClassInfo(name, access, superName, interfaces);
+    }
+
+    private static String className(int classIndex, int[] classNameIndexes, byte[] utf8, int[] utf8Offsets, int[] utf8Lengths)
+            throws IOException
+    {
+        if (classIndex <= 0 || classIndex >= classNameIndexes.length || classNameIndexes[classIndex] == 0) {
+            throw new IOException("Invalid class constant index " + classIndex);
+        }
+        int nameIndex = classNameIndexes[classIndex];
+        return decodeModifiedUtf8(utf8, utf8Offsets[nameIndex], utf8Lengths[nameIndex]);
+    }
+
+    /**
+     * Decodes the modified UTF-8 of the class file format, which encodes characters in one to three bytes.
+     */
+    private static String decodeModifiedUtf8(byte[] bytes, int offset, int length)
+    {
+        char[] chars = new char[length];
+        int count = 0;
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            int value = bytes[position++] & 0xFF;
+            if (value < 0x80) {
+                chars[count++] = (char) value;
+            }
+            else if ((value & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((value & 0x1F) << 6) | (bytes[position++] & 0x3F));
+            }
+            else {
+                chars[count++] = (char) (((value & 0x0F) << 12) | ((bytes[position++] & 0x3F) << 6) | (bytes[position++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Set of internal class names that a class must reference to be of interest. Names are compared as encoded bytes,
+     * so classes that fail the filter never have any of their names decoded.
+     * <p>
+     * A class can also reach the names through a dependency class it extends or implements, and which dependency
+     * classes do is only known once they are read. So a class whose superclass or one of whose interfaces lies outside
+     * the JDK always passes. JDK classes never extend anything but JDK classes, so a class that only has JDK supertypes
+     * and references none of the names cannot reach them, unless a name is itself a JDK class, in which case every
+     * class passes.
+     */
+    static final class ReferenceFilter
+    {
+        private static final byte[] JDK_PACKAGE = "java/".getBytes(UTF_8);
+
+        private final Set<ByteBuffer> names = new HashSet<>();
+        private final boolean jdkNames;
+
+        ReferenceFilter(Collection<String> internalNames)
+        {
+            // Class names never contain the characters whose modified UTF-8 form differs from standard UTF-8
+            for (String internalName : internalNames) {
+                names.add(ByteBuffer.wrap(internalName.getBytes(UTF_8)));
+            }
+            jdkNames = internalNames.stream().anyMatch(internalName -> internalName.startsWith("java/"));
+        }
+
+        private boolean matches(int[] classNameIndexes, int thisClass, int superClass, int[] interfaceIndexes, byte[] utf8, int[] utf8Offsets, int[] utf8Lengths)
+        {
+            if (jdkNames) {
+                return true;
+            }
+            if (superClass != 0 && !isJdkClass(superClass, classNameIndexes, utf8, utf8Offsets, utf8Lengths)) {
+                return true;
+            }
+            for (int interfaceIndex : interfaceIndexes) {
+                if (!isJdkClass(interfaceIndex, classNameIndexes, utf8, utf8Offsets, utf8Lengths)) {
+                    return true;
+                }
+            }
+            for (int index = 1; index < classNameIndexes.length; index++) {
+                int nameIndex = classNameIndexes[index];
+                if (nameIndex == 0 || index == thisClass) {
+                    continue;
+                }
+                if (names.contains(ByteBuffer.wrap(utf8, utf8Offsets[nameIndex], utf8Lengths[nameIndex]))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Whether the class constant names a class in the JDK. An invalid index is not, so that the class passes and
+         * the index is reported when its name is decoded.
+         */
+        private static boolean isJdkClass(int classIndex, int[] classNameIndexes, byte[] utf8, int[] utf8Offsets, int[] utf8Lengths)
+        {
+            if (classIndex <= 0 || classIndex >= classNameIndexes.length || classNameIndexes[classIndex] == 0) {
+                return false;
+            }
+            int nameIndex = classNameIndexes[classIndex];
+            return utf8Lengths[nameIndex] >= JDK_PACKAGE.length
+                    && Arrays.equals(utf8, utf8Offsets[nameIndex], utf8Offsets[nameIndex] + JDK_PACKAGE.length, JDK_PACKAGE, 0, JDK_PACKAGE.length);
+        }
+    }
+}
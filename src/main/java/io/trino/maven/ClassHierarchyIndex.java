@@ -0,0 +1,241 @@
+package io.trino.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * On-disk record of a generate-service-descriptor run: the size and modification time of every local class file along
+ * with its parsed header, the headers that were resolved from dependencies, the fingerprints of the configuration and
+ * of the dependency set, and the services jar that was written. The next run only re-reads class files whose size or
+ * modification time changed, and is skipped altogether when neither an input nor the services jar changed.
+ */
+final class ClassHierarchyIndex
+{
+    private static final int MAGIC = 0x54504349;
+    private static final int VERSION = 1;
+
+    static final ClassHierarchyIndex EMPTY = new ClassHierarchyIndex("", "", List.of(), Map.of(), Map.of(), new FileStamp(-1, -1));
+
+    private final String configuration;
+    private final String dependencyFingerprint;
+    private final List<ClassFile> classFiles;
+    private final Map<ClassFile, ClassInfo> localClasses;
+    private final Map<String, ClassInfo> dependencyClasses;
+    private final FileStamp servicesJar;
+
+    /**
+     * A local class file, identified by its path relative to the classes directory.
+     */
+    record ClassFile(String path, long size, long lastModified)
+    {
+        ClassFile
+        {
+            requireNonNull(path, "path is null");
+        }
+    }
+
+    private record FileStamp(long size, long lastModified)
+    {
+        static FileStamp of(Path file)
+                throws IOException
+        {
+            BasicFileAttributes attributes = readAttributes(file, BasicFileAttributes.class);
+            return new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    ClassHierarchyIndex(
+            String configuration,
+            String dependencyFingerprint,
+            List<ClassFile> classFiles,
+            Map<ClassFile, ClassInfo> localClasses,
+            Map<String, ClassInfo> dependencyClasses,
+            Path servicesJar)
+            throws IOException
+    {
+        this(configuration, dependencyFingerprint, classFiles, localClasses, dependencyClasses, FileStamp.of(servicesJar));
+    }
+
+    private ClassHierarchyIndex(
+            String configuration,
+            String dependencyFingerprint,
+            List<ClassFile> classFiles,
+            Map<ClassFile, ClassInfo> localClasses,
+            Map<String, ClassInfo> dependencyClasses,
+            FileStamp servicesJar)
+    {
+        this.configuration = requireNonNull(configuration, "configuration is null");
+        this.dependencyFingerprint = requireNonNull(dependencyFingerprint, "dependencyFingerprint is null");
+        this.classFiles = List.copyOf(classFiles);
+        this.localClasses = Map.copyOf(localClasses);
+        this.dependencyClasses = Map.copyOf(dependencyClasses);
+        this.servicesJar = requireNonNull(servicesJar, "servicesJar is null");
+    }
+
+    /**
+     * Whether the run recorded by this index produced the given services jar from exactly these inputs.
+     */
+    boolean isUpToDate(String configuration, String dependencyFingerprint, List<ClassFile> classFiles, Path servicesJar)
+    {
+        if (!this.configuration.equals(configuration)
+                || !this.dependencyFingerprint.equals(dependencyFingerprint)
+                || !this.classFiles.equals(classFiles)
+                || !isRegularFile(servicesJar)) {
+            return false;
+        }
+        try {
+            return this.servicesJar.equals(FileStamp.of(servicesJar));
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the header recorded for a class file, if the file is unchanged since it was read.
+     */
+    Optional<ClassInfo> localClass(ClassFile classFile)
+    {
+        return Optional.ofNullable(localClasses.get(classFile));
+    }
+
+    /**
+     * Returns the headers resolved from the dependencies, which remain valid as long as the dependency set does not
+     * change.
+     */
+    Map<String, ClassInfo> dependencyClasses(String dependencyFingerprint)
+    {
+        if (!this.dependencyFingerprint.equals(dependencyFingerprint)) {
+            return Map.of();
+        }
+        return dependencyClasses;
+    }
+
+    /**
+     * Reads an index, returning an empty one when it is missing or was written by a different version.
+     */
+    static ClassHierarchyIndex read(Path file)
+            throws IOException
+    {
+        if (!isRegularFile(file)) {
+            return EMPTY;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return EMPTY;
+            }
+            String configuration = in.readUTF();
+            String dependencyFingerprint = in.readUTF();
+            FileStamp servicesJar = new FileStamp(in.readLong(), in.readLong());
+
+            int classFileCount = in.readInt();
+            ClassFile[] classFiles = new ClassFile[classFileCount];
+            Map<ClassFile, ClassInfo> localClasses = new HashMap<>();
+            for (int i = 0; i < classFileCount; i++) {
+                classFiles[i] = new ClassFile(in.readUTF(), in.readLong(), in.readLong());
+                if (in.readBoolean()) {
+                    localClasses.put(classFiles[i], readClassInfo(in));
+                }
+            }
+
+            int dependencyClassCount = in.readInt();
+            Map<String, ClassInfo> dependencyClasses = new HashMap<>();
+            for (int i = 0; i < dependencyClassCount; i++) {
+                ClassInfo classInfo = readClassInfo(in);
+                dependencyClasses.put(classInfo.name, classInfo);
+            }
+            return new ClassHierarchyIndex(configuration, dependencyFingerprint, List.of(classFiles), localClasses, dependencyClasses, servicesJar);
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file that then replaces the target, so a failed or concurrent write never leaves
+     * a truncated index behind.
+     */
+    void write(Path file)
+            throws IOException
+    {
+        createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(configuration);
+                out.writeUTF(dependencyFingerprint);
+                out.writeLong(servicesJar.size());
+                out.writeLong(servicesJar.lastModified());
+
+                out.writeInt(classFiles.size());
+                for (ClassFile classFile : classFiles) {
+                    out.writeUTF(classFile.path());
+                    out.writeLong(classFile.size());
+                    out.writeLong(classFile.lastModified());
+                    ClassInfo classInfo = localClasses.get(classFile);
+                    out.writeBoolean(classInfo != null);
+                    if (classInfo != null) {
+                        writeClassInfo(out, classInfo);
+                    }
+                }
+
+                out.writeInt(dependencyClasses.size());
+                for (ClassInfo classInfo : dependencyClasses.values()) {
+                    writeClassInfo(out, classInfo);
+                }
+            }
+            move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        }
+        finally {
+            deleteIfExists(temporary);
+        }
+    }
+
+    private static ClassInfo readClassInfo(DataInputStream in)
+            throws IOException
+    {
+        String name = in.readUTF();
+        int access = in.readInt();
+        String superName = in.readBoolean() ? in.readUTF() : null;
+        String[] interfaces = new String[in.readInt()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = in.readUTF();
+        }
+        return new ClassInfo(name, access, superName, interfaces);
+    }
+
+    private static void writeClassInfo(DataOutputStream out, ClassInfo classInfo)
+            throws IOException
+    {
+        out.writeUTF(classInfo.name);
+        out.writeInt(classInfo.access);
+        out.writeBoolean(classInfo.superName != null);
+        if (classInfo.superName != null) {
+            out.writeUTF(classInfo.superName);
+        }
+        out.writeInt(classInfo.interfaces.length);
+        for (String interfaceName : classInfo.interfaces) {
+            out.writeUTF(interfaceName);
+        }
+    }
+}
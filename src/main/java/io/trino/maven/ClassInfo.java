@@ -0,0 +1,23 @@
+package io.trino.maven;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The part of a class header that places a class in the type hierarchy: its access flags, its superclass and the
+ * interfaces it directly implements, all as internal names.
+ */
+final class ClassInfo
+{
+    final String name;
+    final int access;
+    final String superName;
+    final String[] interfaces;
+
+    ClassInfo(String name, int access, String superName, String[] interfaces)
+    {
+        this.name = requireNonNull(name, "name is null");
+        this.access = access;
+        this.superName = superName;
+        this.interfaces = requireNonNull(interfaces, "interfaces is null");
+    }
+}
@@ -0,0 +1,386 @@
+package io.trino.maven;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * The classes a class file names, through its declarations, instructions, constants and annotations, and whether it
+ * loads classes by names it computes, through {@code Class.forName}, {@code ClassLoader.loadClass} or
+ * {@code Lookup.findClass}, which may reach classes it does not name. A call with a constant name names the class.
+ */
+record ClassReferences(Set<String> references, boolean loadsClassesByName)
+{
+    private static final String VERSIONS = "META-INF/versions/";
+
+    ClassReferences
+    {
+        references = Set.copyOf(requireNonNull(references, "references is null"));
+    }
+
+    /**
+     * Reads the references of the class file, failing with an unchecked exception if it cannot be read, typically
+     * because its version is newer than ASM supports.
+     */
+    static ClassReferences read(byte[] classFile)
+    {
+        ReferenceCollector collector = new ReferenceCollector();
+        new ClassReader(classFile).accept(collector, SKIP_DEBUG | SKIP_FRAMES);
+        return new ClassReferences(collector.references, collector.loadsClassesByName);
+    }
+
+    /**
+     * Returns the internal name of the class an entry holds, also for the versions of a multi-release jar.
+     */
+    static Optional<String> className(String entryName)
+    {
+        if (!entryName.endsWith(".class")) {
+            return Optional.empty();
+        }
+        String name = entryName.substring(0, entryName.length() - ".class".length());
+        if (name.startsWith(VERSIONS)) {
+            int separator = name.indexOf('/', VERSIONS.length());
+            if (separator < 0) {
+                return Optional.empty();
+            }
+            name = name.substring(separator + 1);
+        }
+        if (name.equals("module-info") || name.endsWith("/package-info") || name.equals("package-info") || name.startsWith("META-INF/")) {
+            return Optional.empty();
+        }
+        return Optional.of(name);
+    }
+
+    private static final class ReferenceCollector
+            extends ClassVisitor
+    {
+        private final Set<String> references = new HashSet<>();
+        private final AnnotationVisitor annotationCollector = new AnnotationCollector();
+        private boolean loadsClassesByName;
+
+        private ReferenceCollector()
+        {
+            super(ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
+        {
+            addInternalName(superName);
+            if (interfaces != null) {
+                for (String type : interfaces) {
+                    addInternalName(type);
+                }
+            }
+        }
+
+        @Override
+        public void visitNestHost(String nestHost)
+        {
+            addInternalName(nestHost);
+        }
+
+        @Override
+        public void visitOuterClass(String owner, String name, String descriptor)
+        {
+            addInternalName(owner);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
+        {
+            addDescriptor(descriptor);
+            return annotationCollector;
+        }
+
+        @Override
+        public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature)
+        {
+            addDescriptor(descriptor);
+            return new RecordComponentVisitor(ASM9)
+            {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible)
+                {
+                    addDescriptor(annotationDescriptor);
+                    return annotationCollector;
+                }
+            };
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value)
+        {
+            addDescriptor(descriptor);
+            return new FieldVisitor(ASM9)
+            {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible)
+                {
+                    addDescriptor(annotationDescriptor);
+                    return annotationCollector;
+                }
+            };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
+        {
+            addDescriptor(descriptor);
+            if (exceptions != null) {
+                for (String exception : exceptions) {
+                    addInternalName(exception);
+                }
+            }
+            return new MethodCollector();
+        }
+
+        private void addInternalName(String internalName)
+        {
+            if (internalName != null) {
+                addType(Type.getObjectType(internalName));
+            }
+        }
+
+        private void addDescriptor(String descriptor)
+        {
+            addType(Type.getType(descriptor));
+        }
+
+        private void addType(Type type)
+        {
+            switch (type.getSort()) {
+                case Type.ARRAY -> addType(type.getElementType());
+                case Type.OBJECT -> references.add(type.getInternalName());
+                case Type.METHOD -> {
+                    for (Type argument : type.getArgumentTypes()) {
+                        addType(argument);
+                    }
+                    addType(type.getReturnType());
+                }
+                default -> {}
+            }
+        }
+
+        private void addConstant(Object value)
+        {
+            switch (value) {
+                case Type type -> addType(type);
+                case Handle handle -> {
+                    addInternalName(handle.getOwner());
+                    addDescriptor(handle.getDesc());
+                }
+                case ConstantDynamic constant -> {
+                    addDescriptor(constant.getDescriptor());
+                    addConstant(constant.getBootstrapMethod());
+                    for (int i = 0; i < constant.getBootstrapMethodArgumentCount(); i++) {
+                        addConstant(constant.getBootstrapMethodArgument(i));
+                    }
+                }
+                default -> {}
+            }
+        }
+
+        private final class AnnotationCollector
+                extends AnnotationVisitor
+        {
+            private AnnotationCollector()
+            {
+                super(ASM9);
+            }
+
+            @Override
+            public void visit(String name, Object value)
+            {
+                addConstant(value);
+            }
+
+            @Override
+            public void visitEnum(String name, String descriptor, String value)
+            {
+                addDescriptor(descriptor);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String descriptor)
+            {
+                addDescriptor(descriptor);
+                return this;
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name)
+            {
+                return this;
+            }
+        }
+
+        private final class MethodCollector
+                extends MethodVisitor
+        {
+            // The string constant loaded by the previous instruction, which names the class of a following forName
+            private String constantName;
+
+            private MethodCollector()
+            {
+                super(ASM9);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
+            {
+                addDescriptor(descriptor);
+                return annotationCollector;
+            }
+
+            @Override
+            public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible)
+            {
+                addDescriptor(descriptor);
+                return annotationCollector;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotationDefault()
+            {
+                return annotationCollector;
+            }
+
+            @Override
+            public void visitLdcInsn(Object value)
+            {
+                addConstant(value);
+                constantName = value instanceof String string ? string : null;
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface)
+            {
+                addInternalName(owner);
+                addDescriptor(descriptor);
+                if (isClassLoading(owner, name)) {
+                    if (constantName != null && descriptor.startsWith("(Ljava/lang/String;)")) {
+                        references.add(constantName.replace('.', '/'));
+                    }
+                    else {
+                        loadsClassesByName = true;
+                    }
+                }
+                constantName = null;
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments)
+            {
+                addDescriptor(descriptor);
+                addConstant(bootstrapMethodHandle);
+                for (Object argument : bootstrapMethodArguments) {
+                    addConstant(argument);
+                }
+                constantName = null;
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type)
+            {
+                addInternalName(type);
+                constantName = null;
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String descriptor)
+            {
+                addInternalName(owner);
+                addDescriptor(descriptor);
+                constantName = null;
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String descriptor, int numDimensions)
+            {
+                addDescriptor(descriptor);
+                constantName = null;
+            }
+
+            @Override
+            public void visitTryCatchBlock(Label start, Label end, Label handler, String type)
+            {
+                addInternalName(type);
+            }
+
+            @Override
+            public void visitInsn(int opcode)
+            {
+                constantName = null;
+            }
+
+            @Override
+            public void visitIntInsn(int opcode, int operand)
+            {
+                constantName = null;
+            }
+
+            @Override
+            public void visitVarInsn(int opcode, int varIndex)
+            {
+                constantName = null;
+            }
+
+            @Override
+            public void visitJumpInsn(int opcode, Label label)
+            {
+                constantName = null;
+            }
+
+            @Override
+            public void visitLabel(Label label)
+            {
+                constantName = null;
+            }
+
+            @Override
+            public void visitIincInsn(int varIndex, int increment)
+            {
+                constantName = null;
+            }
+
+            @Override
+            public void visitTableSwitchInsn(int min, int max, Label defaultLabel, Label... labels)
+            {
+                constantName = null;
+            }
+
+            @Override
+            public void visitLookupSwitchInsn(Label defaultLabel, int[] keys, Label[] labels)
+            {
+                constantName = null;
+            }
+        }
+
+        private static boolean isClassLoading(String owner, String name)
+        {
+            return switch (owner) {
+                case "java/lang/Class" -> name.equals("forName");
+                case "java/lang/ClassLoader" -> name.equals("loadClass");
+                case "java/lang/invoke/MethodHandles$Lookup" -> name.equals("findClass");
+                default -> false;
+            };
+        }
+    }
+}
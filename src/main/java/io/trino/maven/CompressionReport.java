@@ -0,0 +1,86 @@
+package io.trino.maven;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.newBufferedWriter;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * How each entry of a compressed bundle was written: stored or deflated, why, the bytes it saved and the time the
+ * compression threads spent on it. The report is a text file with one entry per line, sorted by name.
+ */
+final class CompressionReport
+{
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    record Entry(String name, int method, long size, long compressedSize, long deflateNanos, String reason)
+    {
+        Entry
+        {
+            requireNonNull(name, "name is null");
+            requireNonNull(reason, "reason is null");
+        }
+
+        long savedBytes()
+        {
+            return size - compressedSize;
+        }
+    }
+
+    void add(Entry entry)
+    {
+        entries.put(entry.name(), entry);
+    }
+
+    long deflatedEntries()
+    {
+        return entries.values().stream().filter(entry -> entry.method() == ZipDirectory.DEFLATED).count();
+    }
+
+    long entries()
+    {
+        return entries.size();
+    }
+
+    long size()
+    {
+        return entries.values().stream().mapToLong(Entry::size).sum();
+    }
+
+    long savedBytes()
+    {
+        return entries.values().stream().mapToLong(Entry::savedBytes).sum();
+    }
+
+    long deflateNanos()
+    {
+        return entries.values().stream().mapToLong(Entry::deflateNanos).sum();
+    }
+
+    void write(Path file)
+            throws IOException
+    {
+        createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = newBufferedWriter(file, UTF_8)) {
+            writer.write("# method size compressed-size saved deflate-ms entry (reason)\n");
+            for (Entry entry : entries.values()) {
+                writer.write("%-8s %12d %12d %12d %10.1f %s (%s)\n".formatted(
+                        entry.method() == ZipDirectory.DEFLATED ? "deflated" : "stored",
+                        entry.size(),
+                        entry.compressedSize(),
+                        entry.savedBytes(),
+                        entry.deflateNanos() / 1e6,
+                        entry.name(),
+                        entry.reason()));
+            }
+            writer.write("# %d of %d entries deflated, %d of %d bytes saved, %.1f ms deflating\n".formatted(
+                    deflatedEntries(), entries(), savedBytes(), size(), deflateNanos() / 1e6));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package io.trino.maven;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.Files.readAttributes;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Class headers read from dependency jars, and the central directory entries of the classes each jar holds, shared by every generate-service-descriptor execution for as long as the
+ * plugin realm lives: the whole build, or the daemon's lifetime under mvnd. A jar is identified by its path, size and
+ * modification time, so a rebuilt jar is never served stale headers. Lookups and insertions are lock-free; only
+ * eviction, which drops the least recently used jars once the estimated size exceeds the limit, takes a lock.
+ */
+@Named
+@Singleton
+public class DependencyClassCache
+{
+    private static final long DEFAULT_MAXIMUM_WEIGHT = 64L << 20;
+
+    private final ConcurrentMap<JarKey, JarClasses> jars = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private volatile long maximumWeight = DEFAULT_MAXIMUM_WEIGHT;
+
+    record JarKey(Path path, long size, long lastModified)
+    {
+        JarKey
+        {
+            requireNonNull(path, "path is null");
+        }
+
+        static JarKey of(Path jar)
+                throws IOException
+        {
+            BasicFileAttributes attributes = readAttributes(jar, BasicFileAttributes.class);
+            return new JarKey(jar.toAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    record Stats(long hits, long misses, long evictions, long weight, int jars) {}
+
+    private static final class JarClasses
+    {
+        private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+        private final AtomicReference<List<ZipDirectory.Entry>> classEntries = new AtomicReference<>();
+        private final AtomicLong weight = new AtomicLong();
+        private volatile long lastUsed;
+    }
+
+    private record EvictionCandidate(JarKey key, JarClasses classes, long lastUsed) {}
+
+    /**
+     * Sets the estimated number of bytes the cache may hold. The cache is shared by all executions, so the most
+     * recently configured limit applies; zero disables caching.
+     */
+    void setMaximumWeight(long maximumWeight)
+    {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("maximumWeight is negative");
+        }
+        this.maximumWeight = maximumWeight;
+        evictIfNecessary();
+    }
+
+    ClassInfo get(JarKey jar, String internalName)
+    {
+        JarClasses jarClasses = jars.get(jar);
+        ClassInfo classInfo = jarClasses == null ? null : jarClasses.classes.get(internalName);
+        if (classInfo == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        jarClasses.lastUsed = clock.incrementAndGet();
+        hits.incrementAndGet();
+        return classInfo;
+    }
+
+    void put(JarKey jar, ClassInfo classInfo)
+    {
+        if (maximumWeight == 0) {
+            return;
+        }
+        JarClasses jarClasses = jars.computeIfAbsent(jar, ignored -> new JarClasses());
+        jarClasses.lastUsed = clock.incrementAndGet();
+        if (jarClasses.classes.putIfAbsent(classInfo.name, classInfo) == null) {
+            long classWeight = weight(classInfo);
+            jarClasses.weight.addAndGet(classWeight);
+            if (weight.addAndGet(classWeight) > maximumWeight) {
+                evictIfNecessary();
+            }
+        }
+    }
+
+    /**
+     * Returns the central directory entries of all classes in the jar, if they were listed before.
+     */
+    List<ZipDirectory.Entry> getClassEntries(JarKey jar)
+    {
+        JarClasses jarClasses = jars.get(jar);
+        List<ZipDirectory.Entry> classEntries = jarClasses == null ? null : jarClasses.classEntries.get();
+        if (classEntries == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        jarClasses.lastUsed = clock.incrementAndGet();
+        hits.incrementAndGet();
+        return classEntries;
+    }
+
+    void putClassEntries(JarKey jar, List<ZipDirectory.Entry> classEntries)
+    {
+        if (maximumWeight == 0) {
+            return;
+        }
+        JarClasses jarClasses = jars.computeIfAbsent(jar, ignored -> new JarClasses());
+        jarClasses.lastUsed = clock.incrementAndGet();
+        if (jarClasses.classEntries.compareAndSet(null, List.copyOf(classEntries))) {
+            long entriesWeight = 16 + classEntries.stream().mapToLong(entry -> 96 + 2L * entry.name().length()).sum();
+            jarClasses.weight.addAndGet(entriesWeight);
+            if (weight.addAndGet(entriesWeight) > maximumWeight) {
+                evictIfNecessary();
+            }
+        }
+    }
+
+    Stats stats()
+    {
+        return new Stats(hits.get(), misses.get(), evictions.get(), weight.get(), jars.size());
+    }
+
+    /**
+     * Drops the least recently used jars until the cache fits its limit again. A thread that finds another one already
+     * evicting leaves the work to it rather than waiting.
+     */
+    private void evictIfNecessary()
+    {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Recount from the jars themselves, as insertions racing with an earlier eviction may have skewed the total
+            weight.set(jars.values().stream().mapToLong(jarClasses -> jarClasses.weight.get()).sum());
+            if (weight.get() <= maximumWeight) {
+                return;
+            }
+            // Sort a snapshot of the access times, as the live values keep changing under concurrent lookups
+            List<EvictionCandidate> candidates = jars.entrySet().stream()
+                    .map(entry -> new EvictionCandidate(entry.getKey(), entry.getValue(), entry.getValue().lastUsed))
+                    .sorted(Comparator.comparingLong(EvictionCandidate::lastUsed))
+                    .toList();
+            for (EvictionCandidate candidate : candidates) {
+                if (weight.get() <= maximumWeight) {
+                    break;
+                }
+                if (jars.remove(candidate.key(), candidate.classes())) {
+                    weight.addAndGet(-candidate.classes().weight.get());
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Roughly the retained size of a header: the object itself, its array and the characters of its names.
+     */
+    private static long weight(ClassInfo classInfo)
+    {
+        long weight = 64 + 2L * classInfo.name.length();
+        if (classInfo.superName != null) {
+            weight += 48 + 2L * classInfo.superName.length();
+        }
+        for (String interfaceName : classInfo.interfaces) {
+            weight += 56 + 2L * interfaceName.length();
+        }
+        return weight;
+    }
+}
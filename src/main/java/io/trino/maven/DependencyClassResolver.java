@@ -0,0 +1,175 @@
+package io.trino.maven;
+
+import io.trino.maven.DependencyClassCache.JarKey;
+import org.apache.maven.artifact.Artifact;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.nio.file.Files.newInputStream;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Resolves class headers from the dependencies of a project, in classpath order. Dependencies are indexed by the
+ * classes they hold, so a repeated lookup, including one for a name no dependency provides, costs a single hash lookup
+ * rather than a probe of every directory and jar. Directories are indexed on the first lookup. Jars are indexed on
+ * demand, in classpath order, until one holding the name is found, so a build that only needs classes from the first
+ * few jars never reads the central directories of the rest; only a name that no jar provides indexes them all. JDK
+ * classes in {@code java/} cannot be defined by a dependency, so they never index a jar. The class lists and headers
+ * of jars are shared through the {@link DependencyClassCache}; reactor dependencies backed by an output directory may
+ * still change during the build, so they are always read.
+ * <p>
+ * Jars are not kept open as {@link java.util.jar.JarFile}s. Each central directory is read once, recording where
+ * every class lives, and classes are then read by position through a bounded {@link ArchivePool}, which only opens
+ * the jars a lookup actually needs.
+ */
+final class DependencyClassResolver
+        implements Closeable
+{
+    private final DependencyClassCache cache;
+    private final BuildMetrics metrics;
+    private final ArchivePool archives;
+    private final List<Path> directories = new ArrayList<>();
+    private final List<DependencyJar> jars = new ArrayList<>();
+    // internal name -> first dependency holding it; a name absent from both once all jars are indexed is known not to
+    // be on the classpath
+    private final Map<String, JarClass> jarIndex = new HashMap<>();
+    private Map<String, Path> directoryIndex;
+    // the jars before this one on the classpath are in the index
+    private int indexedJars;
+
+    private record DependencyJar(Path path, JarKey key) {}
+
+    private record JarClass(DependencyJar jar, ZipDirectory.Entry entry) {}
+
+    /**
+     * Collects the dependency directories and jars. Reactor dependencies are backed by their output directory (e.g.
+     * target/classes) rather than a jar, and only real jars can be read as archives, so pom-type (BOM/aggregator) and
+     * other non-jar artifacts are skipped.
+     */
+    DependencyClassResolver(Collection<Artifact> artifacts, DependencyClassCache cache, int maximumOpenArchives, BuildMetrics metrics)
+            throws IOException
+    {
+        this.cache = requireNonNull(cache, "cache is null");
+        this.metrics = requireNonNull(metrics, "metrics is null");
+        this.archives = new ArchivePool(maximumOpenArchives);
+        for (Artifact artifact : artifacts) {
+            File file = artifact.getFile();
+            if (file == null) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                directories.add(file.toPath());
+            }
+            else if (file.isFile() && "jar".equals(artifact.getType())) {
+                jars.add(new DependencyJar(file.toPath(), JarKey.of(file.toPath())));
+            }
+        }
+    }
+
+    /**
+     * Returns the header of the first class on the dependency classpath with the given internal name, or
+     * {@code null} if no dependency contains it.
+     */
+    ClassInfo resolve(String internalName)
+            throws IOException
+    {
+        if (directoryIndex == null) {
+            directoryIndex = indexDirectories();
+        }
+
+        Path directory = directoryIndex.get(internalName);
+        if (directory != null) {
+            metrics.count("classesParsed", 1);
+            try (InputStream inputStream = metrics.counting(newInputStream(directory.resolve(internalName + ".class")), "bytesRead")) {
+                return ClassHeaderReader.read(inputStream);
+            }
+        }
+
+        JarClass jarClass = jarIndex.get(internalName);
+        while (jarClass == null && indexedJars < jars.size() && !internalName.startsWith("java/")) {
+            indexJar(jars.get(indexedJars));
+            indexedJars++;
+            jarClass = jarIndex.get(internalName);
+        }
+        if (jarClass == null) {
+            return null;
+        }
+        ClassInfo classInfo = cache.get(jarClass.jar().key(), internalName);
+        if (classInfo == null) {
+            metrics.count("classesParsed", 1);
+            try (InputStream inputStream = metrics.counting(ZipDirectory.openEntry(archives.channel(jarClass.jar().path()), jarClass.entry()), "bytesRead")) {
+                classInfo = ClassHeaderReader.read(inputStream);
+            }
+            cache.put(jarClass.jar().key(), classInfo);
+        }
+        return classInfo;
+    }
+
+    /**
+     * Returns how many times a jar was opened during this resolution.
+     */
+    int openedArchives()
+    {
+        return archives.opened();
+    }
+
+    /**
+     * Indexes the classes of all dependency directories, which come before the jars in the lookup order this replaces,
+     * keeping the first directory for a name that occurs more than once.
+     */
+    private Map<String, Path> indexDirectories()
+            throws IOException
+    {
+        Map<String, Path> directoryIndex = new HashMap<>();
+        for (Path directory : directories) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.map(path -> directory.relativize(path).toString())
+                        .filter(path -> path.endsWith(".class"))
+                        .forEach(path -> directoryIndex.putIfAbsent(toInternalName(path.replace(File.separatorChar, '/')), directory));
+            }
+        }
+        return directoryIndex;
+    }
+
+    /**
+     * Adds the classes of the jar to the index, unless a jar earlier on the classpath already holds them.
+     */
+    private void indexJar(DependencyJar jar)
+            throws IOException
+    {
+        List<ZipDirectory.Entry> classEntries = cache.getClassEntries(jar.key());
+        if (classEntries == null) {
+            // Versioned entries of multi-release jars are left out, as a plain class path lookup never returns them
+            classEntries = ZipDirectory.read(archives.channel(jar.path())).stream()
+                    .filter(entry -> entry.name().endsWith(".class") && !entry.name().startsWith("META-INF/"))
+                    .toList();
+            cache.putClassEntries(jar.key(), classEntries);
+        }
+        metrics.count("jarsIndexed", 1);
+        for (ZipDirectory.Entry entry : classEntries) {
+            jarIndex.putIfAbsent(toInternalName(entry.name()), new JarClass(jar, entry));
+        }
+    }
+
+    private static String toInternalName(String classFilePath)
+    {
+        return classFilePath.substring(0, classFilePath.length() - ".class".length());
+    }
+
+    @Override
+    public void close()
+    {
+        archives.close();
+    }
+}
@@ -0,0 +1,344 @@
+package io.trino.maven;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.newBufferedWriter;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.walk;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Comparator.comparingLong;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+/**
+ * Finds the runtime dependencies of a plugin that none of its classes can reach. Every class of the project is a root,
+ * and a class reaches every class its bytecode names, see {@link ClassReferences}. The providers of a
+ * {@code META-INF/services} file are reached once the service is: right away for services the bundle does not hold,
+ * such as those of the JDK or the SPI, and otherwise when the service class is reached. A class held by several jars
+ * is taken from the first one on the classpath, as the plugin class loader does.
+ * <p>
+ * The jars are read in parallel, one task per jar, keeping only the names each class refers to; the walk over the
+ * resulting graph is cheap. A dependency without classes, which can only be used through its resources, is never
+ * reported as unused. A reachable class that loads classes by computed names may use dependencies the walk does not
+ * see, so such classes are reported along with the unused dependencies, and a reachable class that cannot be read
+ * leaves the result inconclusive.
+ */
+final class DependencyReachability
+{
+    private static final String SERVICES = "META-INF/services/";
+
+    private final List<Archive> archives;
+    // class internal name -> the archive the class loader takes it from
+    private final Map<String, Archive> classes = new HashMap<>();
+    // service internal name -> providers, for services the bundle holds that were not reached yet
+    private final Map<String, List<String>> pendingProviders = new HashMap<>();
+    private final Set<String> reachable = new HashSet<>();
+    private final Queue<String> pending = new ArrayDeque<>();
+    private final Map<String, String> reflectiveClasses = new TreeMap<>();
+    private final Map<String, String> unreadableClasses = new TreeMap<>();
+
+    private record Archive(String name, Map<String, ClassReferences> classes, Set<String> unreadableClasses, Map<String, List<String>> services) {}
+
+    private DependencyReachability(List<Archive> archives)
+    {
+        this.archives = List.copyOf(archives);
+    }
+
+    /**
+     * Reads the classes of the project and of the dependency jars, keyed by their name in classpath order, with the
+     * number of threads given, and walks the classes reachable from the project.
+     */
+    static DependencyReachability analyze(Path classesDirectory, List<Entry<String, Path>> dependencies, int threads)
+            throws IOException, InterruptedException
+    {
+        requireNonNull(classesDirectory, "classesDirectory is null");
+        requireNonNull(dependencies, "dependencies is null");
+        List<Archive> archives = new ArrayList<>(dependencies.size() + 1);
+        try (ExecutorService executor = newFixedThreadPool(Math.max(1, Math.min(threads, dependencies.size() + 1)))) {
+            Future<Archive> project = executor.submit(() -> readDirectory(classesDirectory));
+            // The largest jars go first, so that no thread is left reading a large jar once the others are done
+            Map<Entry<String, Path>, Future<Archive>> futures = new HashMap<>();
+            List<Entry<String, Path>> largestFirst = new ArrayList<>(dependencies);
+            largestFirst.sort(comparingLong((Entry<String, Path> dependency) -> dependency.getValue().toFile().length()).reversed());
+            for (Entry<String, Path> dependency : largestFirst) {
+                futures.put(dependency, executor.submit(() -> readJar(dependency.getKey(), dependency.getValue())));
+            }
+            archives.add(project.get());
+            for (Entry<String, Path> dependency : dependencies) {
+                archives.add(futures.get(dependency).get());
+            }
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause());
+        }
+
+        DependencyReachability reachability = new DependencyReachability(archives);
+        reachability.reachFromProject();
+        return reachability;
+    }
+
+    private void reachFromProject()
+    {
+        for (Archive archive : archives) {
+            for (String className : archive.classes().keySet()) {
+                classes.putIfAbsent(className, archive);
+            }
+            for (String className : archive.unreadableClasses()) {
+                classes.putIfAbsent(className, archive);
+            }
+        }
+
+        Archive project = archives.getFirst();
+        project.classes().keySet().forEach(this::reach);
+        project.unreadableClasses().forEach(this::reach);
+        for (Archive archive : archives) {
+            for (Entry<String, List<String>> service : archive.services().entrySet()) {
+                if (archive == project || !classes.containsKey(service.getKey())) {
+                    service.getValue().forEach(this::reach);
+                }
+                else {
+                    pendingProviders.computeIfAbsent(service.getKey(), ignored -> new ArrayList<>()).addAll(service.getValue());
+                }
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            String className = pending.remove();
+            Archive archive = classes.get(className);
+            List<String> providers = pendingProviders.remove(className);
+            if (providers != null) {
+                providers.forEach(this::reach);
+            }
+            ClassReferences references = archive.classes().get(className);
+            if (references == null) {
+                unreadableClasses.put(className.replace('/', '.'), archive.name());
+                continue;
+            }
+            references.references().forEach(this::reach);
+            if (references.loadsClassesByName()) {
+                reflectiveClasses.put(className.replace('/', '.'), archive.name());
+            }
+        }
+    }
+
+    private void reach(String className)
+    {
+        if (classes.containsKey(className) && reachable.add(className)) {
+            pending.add(className);
+        }
+    }
+
+    /**
+     * Returns the dependencies with classes, none of which is reachable, in classpath order.
+     */
+    List<String> unusedDependencies()
+    {
+        Set<String> used = new HashSet<>();
+        for (String className : reachable) {
+            used.add(classes.get(className).name());
+        }
+        return archives.stream()
+                .skip(1)
+                .filter(archive -> !archive.classes().isEmpty() || !archive.unreadableClasses().isEmpty())
+                .filter(archive -> !used.contains(archive.name()))
+                .map(Archive::name)
+                .toList();
+    }
+
+    /**
+     * Returns the dependencies without any class, in classpath order.
+     */
+    List<String> dependenciesWithoutClasses()
+    {
+        return archives.stream()
+                .skip(1)
+                .filter(archive -> archive.classes().isEmpty() && archive.unreadableClasses().isEmpty())
+                .map(Archive::name)
+                .toList();
+    }
+
+    /**
+     * Returns the reachable classes that load classes by computed names, each with the archive that holds it.
+     */
+    Map<String, String> reflectiveClasses()
+    {
+        return reflectiveClasses;
+    }
+
+    /**
+     * Returns the reachable classes that could not be read, each with the archive that holds it. Unless there are none,
+     * the unused dependencies may be used by these classes.
+     */
+    Map<String, String> unreadableClasses()
+    {
+        return unreadableClasses;
+    }
+
+    /**
+     * Writes a report with the unused dependencies, those without classes, and the reachable classes that load classes
+     * by name or could not be read.
+     */
+    void writeReport(Path file)
+            throws IOException
+    {
+        createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = newBufferedWriter(file, UTF_8)) {
+            writer.write("# %d of %d dependencies unused; %d of %d classes reachable\n"
+                    .formatted(unusedDependencies().size(), archives.size() - 1, reachable.size(), classes.size()));
+            for (String dependency : unusedDependencies()) {
+                writer.write("unused %s\n".formatted(dependency));
+            }
+            for (String dependency : dependenciesWithoutClasses()) {
+                writer.write("no classes %s\n".formatted(dependency));
+            }
+            for (Entry<String, String> reflective : reflectiveClasses.entrySet()) {
+                writer.write("reflection %s in %s\n".formatted(reflective.getKey(), reflective.getValue()));
+            }
+            for (Entry<String, String> unreadable : unreadableClasses.entrySet()) {
+                writer.write("unreadable %s in %s\n".formatted(unreadable.getKey(), unreadable.getValue()));
+            }
+        }
+    }
+
+    private static Archive readDirectory(Path directory)
+            throws IOException
+    {
+        ArchiveBuilder archive = new ArchiveBuilder("project classes");
+        if (!isDirectory(directory)) {
+            return archive.build();
+        }
+        List<Path> files;
+        try (Stream<Path> stream = walk(directory)) {
+            files = stream.filter(path -> isRegularFile(path)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            if (ClassReferences.className(name).isPresent() || isServiceFile(name)) {
+                try (InputStream in = newInputStream(file)) {
+                    archive.add(name, in);
+                }
+            }
+        }
+        return archive.build();
+    }
+
+    private static Archive readJar(String name, Path file)
+            throws IOException
+    {
+        ArchiveBuilder archive = new ArchiveBuilder(name);
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            for (ZipDirectory.Entry entry : ZipDirectory.read(channel)) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (ClassReferences.className(entry.name()).isPresent() || isServiceFile(entry.name())) {
+                    try (InputStream in = ZipDirectory.openEntry(channel, entry)) {
+                        archive.add(entry.name(), in);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new IOException("Failed to read %s: %s".formatted(file, e.getMessage()), e);
+        }
+        return archive.build();
+    }
+
+    private static boolean isServiceFile(String name)
+    {
+        return name.startsWith(SERVICES) && name.length() > SERVICES.length() && name.indexOf('/', SERVICES.length()) < 0;
+    }
+
+    private static final class ArchiveBuilder
+    {
+        private final String name;
+        private final Map<String, ClassReferences> classes = new HashMap<>();
+        private final Set<String> unreadableClasses = new HashSet<>();
+        private final Map<String, List<String>> services = new LinkedHashMap<>();
+
+        private ArchiveBuilder(String name)
+        {
+            this.name = name;
+        }
+
+        private void add(String entryName, InputStream in)
+                throws IOException
+        {
+            if (isServiceFile(entryName)) {
+                services.computeIfAbsent(entryName.substring(SERVICES.length()).replace('.', '/'), ignored -> new ArrayList<>()).addAll(providers(in));
+                return;
+            }
+            String className = ClassReferences.className(entryName).orElse(null);
+            if (className == null) {
+                return;
+            }
+            ClassReferences references;
+            try {
+                references = ClassReferences.read(in.readAllBytes());
+            }
+            catch (RuntimeException e) {
+                // Typically a class file version newer than ASM supports; its references are unknown
+                unreadableClasses.add(className);
+                return;
+            }
+            // The versions of a class in a multi-release jar reach what any of them reaches
+            classes.merge(className, references, (first, second) -> {
+                Set<String> union = new HashSet<>(first.references());
+                union.addAll(second.references());
+                return new ClassReferences(union, first.loadsClassesByName() || second.loadsClassesByName());
+            });
+        }
+
+        private Archive build()
+        {
+            unreadableClasses.removeAll(classes.keySet());
+            return new Archive(name, classes, unreadableClasses, services);
+        }
+    }
+
+    private static List<String> providers(InputStream in)
+            throws IOException
+    {
+        List<String> providers = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            int comment = line.indexOf('#');
+            String provider = (comment < 0 ? line : line.substring(0, comment)).trim();
+            if (!provider.isEmpty()) {
+                providers.add(provider.replace('.', '/'));
+            }
+        }
+        return providers;
+    }
+}
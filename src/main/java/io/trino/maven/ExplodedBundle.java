@@ -0,0 +1,168 @@
+package io.trino.maven;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.nio.file.Files.copy;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createLink;
+import static java.nio.file.Files.delete;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.isSameFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.Files.walk;
+import static java.nio.file.Files.write;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lays out the entries of a plugin bundle as files of a plugin directory, the way a Trino server sees an extracted
+ * bundle. Files are hard links to the bundled files where the file system allows it, and copies otherwise, for example
+ * when the plugin directory is on another file system than the local repository. A file that is already the same file,
+ * or a copy of the same size and modification time, is left alone, and every file is replaced atomically, so that a
+ * server reading the directory never sees a partial file.
+ */
+final class ExplodedBundle
+{
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final Set<Path> files = new HashSet<>();
+    private int linked;
+    private int copied;
+    private int unchanged;
+    private int removed;
+
+    ExplodedBundle(Path directory)
+    {
+        this.directory = requireNonNull(directory, "directory is null").toAbsolutePath().normalize();
+    }
+
+    /**
+     * Adds the file under its name relative to the plugin directory.
+     */
+    void addFile(String name, Path file)
+            throws IOException
+    {
+        Path target = target(name);
+        if (isRegularFile(target, NOFOLLOW_LINKS)) {
+            if (isSameFile(target, file) || isCopy(target, file)) {
+                unchanged++;
+                return;
+            }
+        }
+        Path temporary = temporaryFile(target);
+        try {
+            createLink(temporary, file);
+            linked++;
+        }
+        catch (FileSystemException | UnsupportedOperationException e) {
+            // Typically a plugin directory on another file system; the copy keeps the modification time, so that the
+            // next build recognizes it
+            copy(file, temporary, COPY_ATTRIBUTES);
+            copied++;
+        }
+        move(temporary, target, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    /**
+     * Adds a file with the content under its name relative to the plugin directory.
+     */
+    void addBytes(String name, byte[] content)
+            throws IOException
+    {
+        Path target = target(name);
+        if (isRegularFile(target, NOFOLLOW_LINKS) && Arrays.equals(readAllBytes(target), content)) {
+            unchanged++;
+            return;
+        }
+        Path temporary = temporaryFile(target);
+        write(temporary, content);
+        copied++;
+        move(temporary, target, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    /**
+     * Removes the files of the plugin directory that were not added, such as jars of dependency versions that are no
+     * longer bundled.
+     */
+    void removeOthers()
+            throws IOException
+    {
+        if (!isDirectory(directory)) {
+            return;
+        }
+        List<Path> others;
+        try (Stream<Path> paths = walk(directory)) {
+            others = paths.filter(path -> isRegularFile(path, NOFOLLOW_LINKS) && !files.contains(path)).toList();
+        }
+        for (Path other : others) {
+            delete(other);
+            removed++;
+        }
+    }
+
+    int linked()
+    {
+        return linked;
+    }
+
+    int copied()
+    {
+        return copied;
+    }
+
+    int unchanged()
+    {
+        return unchanged;
+    }
+
+    int removed()
+    {
+        return removed;
+    }
+
+    private Path target(String name)
+            throws IOException
+    {
+        Path target = directory.resolve(name).normalize();
+        if (!target.startsWith(directory) || target.equals(directory)) {
+            throw new IOException("Plugin bundle entry %s is outside of the plugin directory".formatted(name));
+        }
+        files.add(target);
+        createDirectories(target.getParent());
+        return target;
+    }
+
+    private static Path temporaryFile(Path target)
+            throws IOException
+    {
+        Path temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+        deleteIfExists(temporary);
+        return temporary;
+    }
+
+    private static boolean isCopy(Path target, Path file)
+            throws IOException
+    {
+        BasicFileAttributes targetAttributes = readAttributes(target, BasicFileAttributes.class, NOFOLLOW_LINKS);
+        BasicFileAttributes fileAttributes = readAttributes(file, BasicFileAttributes.class);
+        // Copies may keep the modification time at a coarser precision than the file system of the source has
+        return targetAttributes.size() == fileAttributes.size()
+                && targetAttributes.lastModifiedTime().toMillis() == fileAttributes.lastModifiedTime().toMillis();
+    }
+}
@@ -0,0 +1,334 @@
+package io.trino.maven;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import static java.lang.String.join;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.newBufferedWriter;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Merges the jars of a plugin into a single jar, so that the plugin class loader opens one archive instead of one per
+ * jar. Entries are copied as they are, compressed or not, in name order. Every entry name must be held by one jar only,
+ * or by several with the same content, except for these:
+ * <ul>
+ * <li>{@code META-INF/services} files are merged, keeping the first occurrence of every provider</li>
+ * <li>license and notice files are all kept: the first of each name where it is, any with different content under
+ * {@code META-INF/licenses/<jar>/}, followed by its original name</li>
+ * <li>the manifest is replaced, declaring a multi-release jar if any of the jars is one</li>
+ * <li>signature files, jar indexes and module descriptors are left out, as they do not hold for the merged jar</li>
+ * </ul>
+ * Entries with the same name and different content are conflicts, which {@link #conflicts()} lists before anything
+ * is written.
+ */
+final class JarMerger
+        implements Closeable
+{
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String SERVICES = "META-INF/services/";
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final String LICENSES = "META-INF/licenses/";
+
+    private final List<Source> sources = new ArrayList<>();
+    private final Map<String, Choice> entries = new TreeMap<>();
+    private final Map<String, Set<String>> services = new TreeMap<>();
+    private final Map<String, List<String>> serviceJars = new TreeMap<>();
+    private final Map<String, List<Choice>> licenseVersions = new TreeMap<>();
+    private final Map<String, String> licenses = new TreeMap<>();
+    private final Map<String, List<String>> identicalDuplicates = new TreeMap<>();
+    private final Map<String, List<String>> conflicts = new TreeMap<>();
+    private final List<String> skipped = new ArrayList<>();
+    private boolean multiRelease;
+
+    private record Source(String name, FileChannel channel) {}
+
+    private record Choice(Source source, ZipDirectory.Entry entry) {}
+
+    /**
+     * Reads the central directories of the jars, given by name in the order they take precedence.
+     */
+    JarMerger(List<Entry<String, Path>> jars)
+            throws IOException
+    {
+        try {
+            for (Entry<String, Path> jar : jars) {
+                Source source = new Source(jar.getKey(), FileChannel.open(jar.getValue(), READ));
+                sources.add(source);
+                for (ZipDirectory.Entry entry : ZipDirectory.read(source.channel())) {
+                    add(source, entry);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            try (Closeable ignored = this) {
+                throw e;
+            }
+        }
+    }
+
+    private void add(Source source, ZipDirectory.Entry entry)
+            throws IOException
+    {
+        String name = entry.name();
+        if (name.equals(MANIFEST)) {
+            multiRelease |= isMultiRelease(source, entry);
+            return;
+        }
+        if (isSignature(name) || name.equals("META-INF/INDEX.LIST") || isModuleDescriptor(name)) {
+            skipped.add(name + " from " + source.name());
+            return;
+        }
+        if (name.startsWith(SERVICES) && name.indexOf('/', SERVICES.length()) < 0 && !entry.isDirectory()) {
+            services.computeIfAbsent(name, ignored -> new LinkedHashSet<>()).addAll(providers(source, entry));
+            serviceJars.computeIfAbsent(name, ignored -> new ArrayList<>()).add(source.name());
+            return;
+        }
+
+        if (isLicense(name) && !entry.isDirectory()) {
+            addLicense(source, entry);
+            return;
+        }
+
+        Choice previous = entries.putIfAbsent(name, new Choice(source, entry));
+        if (previous == null || entry.isDirectory()) {
+            return;
+        }
+        if (isSameContent(previous.entry(), entry)) {
+            identicalDuplicates.computeIfAbsent(name, ignored -> new ArrayList<>(List.of(previous.source().name()))).add(source.name());
+        }
+        else {
+            conflicts.computeIfAbsent(name, ignored -> new ArrayList<>(List.of(previous.source().name()))).add(source.name());
+        }
+    }
+
+    /**
+     * Keeps a license or notice file unless an earlier jar has the same one, under its own name if it is the first of
+     * that name and under the name of its jar otherwise, since the licenses of every jar have to ship with it.
+     */
+    private void addLicense(Source source, ZipDirectory.Entry entry)
+    {
+        String name = entry.name();
+        List<Choice> versions = licenseVersions.computeIfAbsent(name, ignored -> new ArrayList<>());
+        for (Choice version : versions) {
+            if (isSameContent(version.entry(), entry)) {
+                identicalDuplicates.computeIfAbsent(name, ignored -> new ArrayList<>(List.of(version.source().name()))).add(source.name());
+                return;
+            }
+        }
+        Choice choice = new Choice(source, entry);
+        String target = versions.isEmpty() ? name : LICENSES + source.name() + "/" + name;
+        versions.add(choice);
+        Choice previous = entries.putIfAbsent(target, choice);
+        if (previous != null) {
+            conflicts.computeIfAbsent(target, ignored -> new ArrayList<>(List.of(previous.source().name()))).add(source.name());
+            return;
+        }
+        licenses.put(target, source.name());
+    }
+
+    /**
+     * Returns the entry names held with different content by several jars, each with the jars holding it.
+     */
+    Map<String, List<String>> conflicts()
+    {
+        return conflicts;
+    }
+
+    /**
+     * Writes the merged jar, which must not have conflicts.
+     */
+    void write(Path file, Optional<FileTime> lastModifiedTime)
+            throws IOException
+    {
+        if (!conflicts.isEmpty()) {
+            throw new IllegalStateException("Jars with conflicting entries cannot be merged");
+        }
+        try (PluginBundleWriter jar = new PluginBundleWriter(file, lastModifiedTime)) {
+            jar.addBytes(MANIFEST, manifest());
+            for (Entry<String, Choice> entry : entries.entrySet()) {
+                Choice choice = entry.getValue();
+                jar.copyEntry(choice.source().channel(), choice.entry(), entry.getKey());
+            }
+            for (Entry<String, Set<String>> service : services.entrySet()) {
+                jar.addBytes(service.getKey(), (join("\n", service.getValue()) + "\n").getBytes(UTF_8));
+            }
+        }
+    }
+
+    int jars()
+    {
+        return sources.size();
+    }
+
+    int entries()
+    {
+        return entries.size() + services.size() + 1;
+    }
+
+    int serviceFiles()
+    {
+        return services.size();
+    }
+
+    int licenseFiles()
+    {
+        return licenses.size();
+    }
+
+    int skippedEntries()
+    {
+        return skipped.size();
+    }
+
+    /**
+     * Writes a report of what was merged: the entries each jar contributed, the merged services, the license files
+     * and the jars they come from, the identical duplicates and the entries left out.
+     */
+    void writeReport(Path file)
+            throws IOException
+    {
+        Map<String, Integer> contributed = new TreeMap<>();
+        for (Source source : sources) {
+            contributed.put(source.name(), 0);
+        }
+        entries.values().forEach(choice -> contributed.merge(choice.source().name(), 1, Integer::sum));
+
+        createDirectories(file.toAbsolutePath().getParent());
+        try (Writer writer = newBufferedWriter(file, UTF_8)) {
+            writer.write("# Merged %d jars: %d entries, %d service files, %d license files, %d entries left out\n"
+                    .formatted(jars(), entries(), serviceFiles(), licenseFiles(), skippedEntries()));
+            writer.write("multi-release %s\n".formatted(multiRelease));
+            for (Entry<String, Integer> jar : contributed.entrySet()) {
+                writer.write("jar %s %d entries\n".formatted(jar.getKey(), jar.getValue()));
+            }
+            for (Entry<String, Set<String>> service : services.entrySet()) {
+                writer.write("service %s %d providers from %s\n".formatted(service.getKey(), service.getValue().size(), join(", ", serviceJars.get(service.getKey()))));
+            }
+            for (Entry<String, String> license : licenses.entrySet()) {
+                writer.write("license %s from %s\n".formatted(license.getKey(), license.getValue()));
+            }
+            for (Entry<String, List<String>> duplicate : identicalDuplicates.entrySet()) {
+                writer.write("identical %s in %s\n".formatted(duplicate.getKey(), join(", ", duplicate.getValue())));
+            }
+            for (String entry : skipped) {
+                writer.write("skipped %s\n".formatted(entry));
+            }
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        IOException failure = null;
+        for (Source source : sources) {
+            try {
+                source.channel().close();
+            }
+            catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private byte[] manifest()
+            throws IOException
+    {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Created-By", "trino-maven-plugin");
+        if (multiRelease) {
+            attributes.put(Attributes.Name.MULTI_RELEASE, "true");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        return out.toByteArray();
+    }
+
+    private static boolean isMultiRelease(Source source, ZipDirectory.Entry entry)
+            throws IOException
+    {
+        try (InputStream in = ZipDirectory.openEntry(source.channel(), entry)) {
+            return Boolean.parseBoolean(new Manifest(in).getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+        }
+    }
+
+    private static List<String> providers(Source source, ZipDirectory.Entry entry)
+            throws IOException
+    {
+        List<String> providers = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ZipDirectory.openEntry(source.channel(), entry), UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int comment = line.indexOf('#');
+                String provider = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (!provider.isEmpty()) {
+                    providers.add(provider);
+                }
+            }
+        }
+        return providers;
+    }
+
+    private static boolean isSameContent(ZipDirectory.Entry first, ZipDirectory.Entry second)
+    {
+        return first.crc() == second.crc() && first.size() == second.size();
+    }
+
+    private static boolean isSignature(String name)
+    {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) >= 0) {
+            return false;
+        }
+        String fileName = name.substring("META-INF/".length()).toUpperCase(Locale.ROOT);
+        return fileName.endsWith(".SF") || fileName.endsWith(".RSA") || fileName.endsWith(".DSA") || fileName.endsWith(".EC") || fileName.startsWith("SIG-");
+    }
+
+    private static boolean isModuleDescriptor(String name)
+    {
+        return name.equals("module-info.class") || (name.startsWith(VERSIONS) && name.endsWith("/module-info.class"));
+    }
+
+    /**
+     * Whether the entry is a license or notice file, at the root or under {@code META-INF}.
+     */
+    private static boolean isLicense(String name)
+    {
+        int separator = name.lastIndexOf('/');
+        String directory = separator < 0 ? "" : name.substring(0, separator + 1);
+        if (!directory.isEmpty() && !directory.startsWith("META-INF/")) {
+            return false;
+        }
+        String fileName = name.substring(separator + 1).toUpperCase(Locale.ROOT);
+        return fileName.startsWith("LICENSE") || fileName.startsWith("NOTICE") || fileName.startsWith("COPYING") || fileName.startsWith("DEPENDENCIES");
+    }
+}
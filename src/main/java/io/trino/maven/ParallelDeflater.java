@@ -0,0 +1,326 @@
+package io.trino.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Deflates the entries of a zip on several threads and appends them to a {@link PluginBundleWriter} in the order they
+ * were added. Each entry is split into chunks of {@value #CHUNK_SIZE} bytes, which are deflated concurrently, each into
+ * a buffer of its own, as the raw deflate blocks of a single stream: every chunk but the last ends with a sync flush, so
+ * that it ends on a byte boundary, and is primed with the last 32 KiB of the chunk before it, so that splitting costs
+ * next to nothing in compression. The checksums of the chunks are combined into that of the entry.
+ * <p>
+ * The chunks, and therefore the zip, do not depend on the number of threads or the memory budget. The budget bounds
+ * the input and output buffers of the chunks in flight: once it is used up, the oldest chunk is waited for and written
+ * before the next one is started. Entries that are not deflated here, such as stored ones, are added by the writer
+ * itself in their turn, so that they do not hold up the chunks after them.
+ */
+final class ParallelDeflater
+        implements Closeable
+{
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final PluginBundleWriter writer;
+    private final int level;
+    private final long memoryBudget;
+    private final BuildMetrics metrics;
+    private final ExecutorService executor;
+    private final Queue<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private final List<DeflatedEntry> deflatedEntries = new ArrayList<>();
+    private long reservedMemory;
+    private long entryCrc;
+    private long entryCompressedSize;
+    private long entryDeflateNanos;
+
+    /**
+     * An entry as deflated, with the time the compression threads spent on it.
+     */
+    record DeflatedEntry(String name, long size, long compressedSize, long deflateNanos)
+    {
+        DeflatedEntry
+        {
+            requireNonNull(name, "name is null");
+        }
+    }
+
+    /**
+     * Adds an entry to the writer by itself.
+     */
+    interface WriterAction
+    {
+        void write(PluginBundleWriter writer)
+                throws IOException;
+    }
+
+    private sealed interface PendingWrite
+            permits PendingChunk, PendingAction {}
+
+    private record PendingChunk(String name, long entrySize, boolean first, boolean last, long reservedMemory, Future<DeflatedChunk> chunk)
+            implements PendingWrite {}
+
+    private record PendingAction(WriterAction action)
+            implements PendingWrite {}
+
+    private record DeflatedChunk(byte[] data, long crc, int length, long deflateNanos) {}
+
+    ParallelDeflater(PluginBundleWriter writer, int threads, int level, long memoryBudget, BuildMetrics metrics)
+    {
+        this.writer = requireNonNull(writer, "writer is null");
+        this.level = level;
+        this.memoryBudget = memoryBudget;
+        this.metrics = requireNonNull(metrics, "metrics is null");
+        this.executor = newFixedThreadPool(threads);
+    }
+
+    /**
+     * Adds the file as a deflated entry. The size must be the current size of the file.
+     */
+    void addFile(String name, Path file, long size)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        long offset = 0;
+        do {
+            long chunkOffset = offset;
+            int length = (int) Math.min(CHUNK_SIZE, size - offset);
+            boolean last = chunkOffset + length == size;
+            submit(name, size, chunkOffset == 0, last, length, () -> deflate(readChunk(file, size, chunkOffset, length), last, level));
+            offset += length;
+        }
+        while (offset < size);
+    }
+
+    /**
+     * Adds the content as a deflated entry.
+     */
+    void addBytes(String name, byte[] content)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        submit(name, content.length, true, true, content.length, () -> deflate(new Chunk(content, 0, content.length), true, level));
+    }
+
+    /**
+     * Adds an entry that the writer adds by itself once the entries added before it are written.
+     */
+    void addWritten(WriterAction action)
+    {
+        pendingWrites.add(new PendingAction(requireNonNull(action, "action is null")));
+    }
+
+    /**
+     * Writes all remaining entries to the writer.
+     */
+    void finish()
+            throws IOException, ExecutionException, InterruptedException
+    {
+        while (!pendingWrites.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    /**
+     * Returns the entries deflated so far, in bundle order.
+     */
+    List<DeflatedEntry> deflatedEntries()
+    {
+        return List.copyOf(deflatedEntries);
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+        try {
+            // Deflating a chunk does not respond to interruption, so wait, for a bounded time, for the chunks in flight,
+            // so that no compression thread still holds its buffers or reads a file once the bundle is closed
+            executor.awaitTermination(1, MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(String name, long entrySize, boolean first, boolean last, int length, Callable<DeflatedChunk> task)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        // The input with its dictionary, and an output that deflate may grow slightly beyond the input
+        long chunkMemory = 2L * length + DICTIONARY_SIZE + OUTPUT_BUFFER_SIZE;
+        while (reservedMemory > 0 && reservedMemory + chunkMemory > memoryBudget) {
+            writeOldest();
+        }
+        reservedMemory += chunkMemory;
+        pendingWrites.add(new PendingChunk(name, entrySize, first, last, chunkMemory, executor.submit(task)));
+    }
+
+    private void writeOldest()
+            throws IOException, ExecutionException, InterruptedException
+    {
+        switch (pendingWrites.remove()) {
+            case PendingAction pending -> pending.action().write(writer);
+            case PendingChunk pending -> {
+                DeflatedChunk chunk = pending.chunk().get();
+                reservedMemory -= pending.reservedMemory();
+                if (pending.first()) {
+                    writer.startDeflatedEntry(pending.name(), pending.entrySize());
+                    entryCrc = 0;
+                    entryCompressedSize = 0;
+                    entryDeflateNanos = 0;
+                }
+                writer.writeDeflatedData(chunk.data());
+                entryCrc = crc32Combine(entryCrc, chunk.crc(), chunk.length());
+                entryCompressedSize += chunk.data().length;
+                entryDeflateNanos += chunk.deflateNanos();
+                if (pending.last()) {
+                    writer.finishDeflatedEntry(entryCrc);
+                    deflatedEntries.add(new DeflatedEntry(pending.name(), pending.entrySize(), entryCompressedSize, entryDeflateNanos));
+                }
+            }
+        }
+    }
+
+    /**
+     * Uncompressed data of a chunk, preceded in the buffer by the dictionary it is deflated with.
+     */
+    private record Chunk(byte[] buffer, int dictionaryLength, int length) {}
+
+    private Chunk readChunk(Path file, long size, long offset, int length)
+            throws IOException
+    {
+        int dictionaryLength = (int) Math.min(offset, DICTIONARY_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(dictionaryLength + length);
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            if (in.size() != size) {
+                throw new ZipException("File %s changed while it was added to the zip".formatted(file));
+            }
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer, offset - dictionaryLength + buffer.position()) < 0) {
+                    throw new ZipException("Unexpected end of file %s while adding it to the zip".formatted(file));
+                }
+            }
+        }
+        metrics.count("bytesRead", length);
+        return new Chunk(buffer.array(), dictionaryLength, length);
+    }
+
+    private static DeflatedChunk deflate(Chunk chunk, boolean last, int level)
+    {
+        long start = System.nanoTime();
+        CRC32 crc = new CRC32();
+        crc.update(chunk.buffer(), chunk.dictionaryLength(), chunk.length());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(chunk.length() / 2, 64));
+        byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (chunk.dictionaryLength() > 0) {
+                deflater.setDictionary(chunk.buffer(), 0, chunk.dictionaryLength());
+            }
+            deflater.setInput(chunk.buffer(), chunk.dictionaryLength(), chunk.length());
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            else {
+                // A sync flush that fills the buffer may have more output pending
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, count);
+                }
+                while (count == buffer.length || !deflater.needsInput());
+            }
+        }
+        finally {
+            deflater.end();
+        }
+        return new DeflatedChunk(out.toByteArray(), crc.getValue(), chunk.length(), System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the CRC-32 of two concatenated blocks of data given their CRC-32s and the length of the second one, as
+     * zlib's {@code crc32_combine} does: appending the second block to the first is a linear operation on the checksum,
+     * applied here by repeatedly squaring the operator that appends a single zero bit.
+     */
+    static long crc32Combine(long crc1, long crc2, long length2)
+    {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // Operator for one zero bit
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Operators for two and four zero bits
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        // Apply the operator for each set bit of the length in bytes, starting with one zero byte
+        long crc = crc1;
+        long length = length2;
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length & 1) != 0) {
+                crc = gf2MatrixTimes(even, crc);
+            }
+            length >>= 1;
+            if (length == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length & 1) != 0) {
+                crc = gf2MatrixTimes(odd, crc);
+            }
+            length >>= 1;
+        }
+        while (length != 0);
+        return crc ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector)
+    {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix)
+    {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+}
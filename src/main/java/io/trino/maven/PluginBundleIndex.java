@@ -0,0 +1,257 @@
+package io.trino.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.newInputStream;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Index of the classes in the jars of a plugin bundle, stored in the bundle as {@value #ENTRY_NAME} relative to the
+ * plugin directory. It maps every package, and optionally every class, to the jars that hold it, so that a plugin
+ * class loader can go straight to the right jar instead of probing each of them in turn. A package held by more than
+ * one jar is a split package; for those only a class level index names the one jar to read.
+ * <p>
+ * The index is a UTF-8 text file, one record per line, with jars referenced by their position in bundle order. The
+ * {@code classes} record marks an index that maps every class:
+ * <pre>
+ * trino-plugin-index 1
+ * jar example-1.0.jar
+ * jar shared-2.0.jar
+ * package com.example 0 1
+ * classes
+ * class com.example.Example 0
+ * class com.example.Shared 1
+ * </pre>
+ */
+public final class PluginBundleIndex
+{
+    public static final String ENTRY_NAME = "META-INF/trino-plugin.index";
+
+    private static final String HEADER = "trino-plugin-index 1";
+
+    private final List<String> jars;
+    private final Map<String, List<Integer>> packages;
+    private final Map<String, List<Integer>> classes;
+    private final boolean classesIndexed;
+
+    private PluginBundleIndex(List<String> jars, Map<String, List<Integer>> packages, Map<String, List<Integer>> classes, boolean classesIndexed)
+    {
+        this.jars = List.copyOf(jars);
+        this.packages = requireNonNull(packages, "packages is null");
+        this.classes = requireNonNull(classes, "classes is null");
+        this.classesIndexed = classesIndexed;
+    }
+
+    /**
+     * Reads the index of an extracted plugin directory.
+     */
+    public static PluginBundleIndex read(Path pluginDirectory)
+            throws IOException
+    {
+        try (InputStream in = newInputStream(pluginDirectory.resolve(ENTRY_NAME))) {
+            return read(in);
+        }
+    }
+
+    public static PluginBundleIndex read(InputStream in)
+            throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        if (!HEADER.equals(reader.readLine())) {
+            throw new IOException("Not a Trino plugin bundle index");
+        }
+        List<String> jars = new ArrayList<>();
+        Map<String, List<Integer>> packages = new TreeMap<>();
+        Map<String, List<Integer>> classes = new TreeMap<>();
+        boolean classesIndexed = false;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            int separator = line.indexOf(' ');
+            String type = separator < 0 ? line : line.substring(0, separator);
+            switch (type) {
+                case "jar" -> jars.add(line.substring(separator + 1));
+                case "package" -> put(packages, line.substring(separator + 1), jars.size());
+                case "classes" -> classesIndexed = true;
+                case "class" -> put(classes, line.substring(separator + 1), jars.size());
+                default -> throw new IOException("Invalid Trino plugin bundle index record: " + line);
+            }
+        }
+        return new PluginBundleIndex(jars, packages, classes, classesIndexed);
+    }
+
+    private static void put(Map<String, List<Integer>> names, String record, int jarCount)
+            throws IOException
+    {
+        String[] fields = record.split(" ");
+        List<Integer> jarIndexes = new ArrayList<>(fields.length - 1);
+        for (int i = 1; i < fields.length; i++) {
+            int jarIndex = -1;
+            try {
+                jarIndex = Integer.parseInt(fields[i]);
+            }
+            catch (NumberFormatException ignored) {
+                // reported below
+            }
+            if (jarIndex < 0 || jarIndex >= jarCount) {
+                throw new IOException("Invalid jar reference in Trino plugin bundle index record: " + record);
+            }
+            jarIndexes.add(jarIndex);
+        }
+        names.put(fields[0], List.copyOf(jarIndexes));
+    }
+
+    /**
+     * Returns the indexed jars in bundle order.
+     */
+    public List<String> jars()
+    {
+        return jars;
+    }
+
+    /**
+     * Returns the jars holding classes of the package, in bundle order, or an empty list if none does.
+     */
+    public List<String> jarsForPackage(String packageName)
+    {
+        return jarNames(packages.get(packageName));
+    }
+
+    /**
+     * Returns whether the index maps every class, not only every package.
+     */
+    public boolean hasClasses()
+    {
+        return classesIndexed;
+    }
+
+    /**
+     * Returns, in bundle order, the jars that may hold the class with the given binary name: those holding the class
+     * itself if the index maps classes, otherwise those holding its package. An empty list means that no bundled jar
+     * holds the class.
+     */
+    public List<String> candidateJars(String className)
+    {
+        if (classesIndexed) {
+            return jarNames(classes.get(className));
+        }
+        int separator = className.lastIndexOf('.');
+        return jarsForPackage(separator < 0 ? "" : className.substring(0, separator));
+    }
+
+    /**
+     * Returns the packages held by more than one jar.
+     */
+    public Set<String> splitPackages()
+    {
+        Set<String> splitPackages = new TreeSet<>();
+        packages.forEach((packageName, jarIndexes) -> {
+            if (jarIndexes.size() > 1) {
+                splitPackages.add(packageName);
+            }
+        });
+        return unmodifiableSet(splitPackages);
+    }
+
+    private List<String> jarNames(List<Integer> jarIndexes)
+    {
+        if (jarIndexes == null) {
+            return List.of();
+        }
+        return jarIndexes.stream().map(jars::get).toList();
+    }
+
+    void write(OutputStream out)
+            throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+        writer.write(HEADER + "\n");
+        for (String jar : jars) {
+            writer.write("jar " + jar + "\n");
+        }
+        write(writer, "package", packages);
+        if (classesIndexed) {
+            writer.write("classes\n");
+            write(writer, "class", classes);
+        }
+        writer.flush();
+    }
+
+    private static void write(Writer writer, String type, Map<String, List<Integer>> names)
+            throws IOException
+    {
+        for (Map.Entry<String, List<Integer>> entry : names.entrySet()) {
+            writer.write(type + " " + entry.getKey());
+            for (int jarIndex : entry.getValue()) {
+                writer.write(" " + jarIndex);
+            }
+            writer.write("\n");
+        }
+    }
+
+    /**
+     * Collects the index from the central directories of the bundled jars, without reading any of their content.
+     */
+    static final class Builder
+    {
+        private final boolean indexClasses;
+        private final List<String> jars = new ArrayList<>();
+        private final Map<String, Set<Integer>> packages = new TreeMap<>();
+        private final Map<String, Set<Integer>> classes = new TreeMap<>();
+
+        Builder(boolean indexClasses)
+        {
+            this.indexClasses = indexClasses;
+        }
+
+        /**
+         * Adds a jar, given its name relative to the plugin directory and its central directory. Versioned entries of
+         * multi-release jars and module descriptors are left out, as a class path lookup never returns them.
+         */
+        void addJar(String jarName, Collection<ZipDirectory.Entry> entries)
+        {
+            int jarIndex = jars.size();
+            jars.add(requireNonNull(jarName, "jarName is null"));
+            for (ZipDirectory.Entry entry : entries) {
+                String name = entry.name();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                int separator = className.lastIndexOf('.');
+                packages.computeIfAbsent(separator < 0 ? "" : className.substring(0, separator), ignored -> new LinkedHashSet<>()).add(jarIndex);
+                if (indexClasses) {
+                    classes.computeIfAbsent(className, ignored -> new LinkedHashSet<>()).add(jarIndex);
+                }
+            }
+        }
+
+        PluginBundleIndex build()
+        {
+            return new PluginBundleIndex(jars, toLists(packages), toLists(classes), indexClasses);
+        }
+
+        private static Map<String, List<Integer>> toLists(Map<String, Set<Integer>> names)
+        {
+            Map<String, List<Integer>> lists = new TreeMap<>();
+            names.forEach((name, jarIndexes) -> lists.put(name, List.copyOf(jarIndexes)));
+            return lists;
+        }
+    }
+}
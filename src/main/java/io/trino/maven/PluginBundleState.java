@@ -0,0 +1,234 @@
+package io.trino.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * On-disk record of a package-trino-plugin run: the configuration, the size, modification time and central directory
+ * checksum of the bundle that was written, and the size and modification time of every file that went into it. The
+ * next run copies the entries of unchanged files from the bundle as they are, without reading the files or deflating
+ * them again, and is skipped altogether when neither a file, the configuration nor the bundle changed.
+ */
+final class PluginBundleState
+{
+    private static final int MAGIC = 0x54504253;
+    private static final int VERSION = 2;
+
+    static final PluginBundleState EMPTY = new PluginBundleState("", List.of(), new FileStamp(-1, -1, -1));
+
+    private final String configuration;
+    private final List<SourceFile> sourceFiles;
+    private final FileStamp bundle;
+
+    /**
+     * A file added to the bundle under the entry name.
+     */
+    record SourceFile(String entryName, String path, long size, long lastModified)
+    {
+        SourceFile
+        {
+            requireNonNull(entryName, "entryName is null");
+            requireNonNull(path, "path is null");
+        }
+
+        static SourceFile of(String entryName, Path file)
+                throws IOException
+        {
+            BasicFileAttributes attributes = readAttributes(file, BasicFileAttributes.class);
+            return new SourceFile(entryName, file.toAbsolutePath().toString(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    /**
+     * Identifies a bundle. The modification time is pinned to the output timestamp in reproducible builds, so a
+     * different bundle of the same size is only told apart by the checksum of its central directory.
+     */
+    private record FileStamp(long size, long lastModified, long directoryChecksum)
+    {
+        static FileStamp of(Path file)
+                throws IOException
+        {
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                return of(file, ZipDirectory.read(channel));
+            }
+        }
+
+        static FileStamp of(Path file, List<ZipDirectory.Entry> entries)
+                throws IOException
+        {
+            BasicFileAttributes attributes = readAttributes(file, BasicFileAttributes.class);
+            return new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis(), directoryChecksum(entries));
+        }
+
+        private static long directoryChecksum(List<ZipDirectory.Entry> entries)
+        {
+            CRC32 checksum = new CRC32();
+            ByteBuffer fields = ByteBuffer.allocate(5 * Long.BYTES);
+            for (ZipDirectory.Entry entry : entries) {
+                checksum.update(entry.name().getBytes(UTF_8));
+                fields.clear()
+                        .putLong(entry.method())
+                        .putLong(entry.crc())
+                        .putLong(entry.compressedSize())
+                        .putLong(entry.size())
+                        .putLong(entry.localHeaderOffset())
+                        .flip();
+                checksum.update(fields);
+            }
+            return checksum.getValue();
+        }
+    }
+
+    PluginBundleState(String configuration, List<SourceFile> sourceFiles, Path bundle)
+            throws IOException
+    {
+        this(configuration, sourceFiles, FileStamp.of(bundle));
+    }
+
+    private PluginBundleState(String configuration, List<SourceFile> sourceFiles, FileStamp bundle)
+    {
+        this.configuration = requireNonNull(configuration, "configuration is null");
+        this.sourceFiles = List.copyOf(sourceFiles);
+        this.bundle = requireNonNull(bundle, "bundle is null");
+    }
+
+    /**
+     * Whether the run recorded by this state produced the given bundle from exactly these files.
+     */
+    boolean isUpToDate(String configuration, List<SourceFile> sourceFiles, Path bundle)
+    {
+        return this.sourceFiles.equals(sourceFiles) && isBundleUnchanged(configuration, bundle);
+    }
+
+    /**
+     * Returns the entries of the bundle, by name, that hold one of the given files exactly as it is now. These are the
+     * entries a clean build would write again, so they can be copied as they are.
+     */
+    Map<String, ZipDirectory.Entry> reusableEntries(String configuration, List<SourceFile> sourceFiles, Path bundle)
+            throws IOException
+    {
+        if (!this.configuration.equals(configuration) || !isRegularFile(bundle)) {
+            return Map.of();
+        }
+        Set<SourceFile> unchanged = new HashSet<>(this.sourceFiles);
+        unchanged.retainAll(sourceFiles);
+        if (unchanged.isEmpty()) {
+            return Map.of();
+        }
+        List<ZipDirectory.Entry> directory;
+        try (FileChannel channel = FileChannel.open(bundle, READ)) {
+            directory = ZipDirectory.read(channel);
+        }
+        if (!this.bundle.equals(FileStamp.of(bundle, directory))) {
+            return Map.of();
+        }
+        Map<String, ZipDirectory.Entry> entries = new HashMap<>();
+        for (ZipDirectory.Entry entry : directory) {
+            entries.put(entry.name(), entry);
+        }
+        Map<String, ZipDirectory.Entry> reusable = new HashMap<>();
+        for (SourceFile sourceFile : unchanged) {
+            ZipDirectory.Entry entry = entries.get(sourceFile.entryName());
+            if (entry != null && entry.size() == sourceFile.size()) {
+                reusable.put(entry.name(), entry);
+            }
+        }
+        return reusable;
+    }
+
+    private boolean isBundleUnchanged(String configuration, Path bundle)
+    {
+        if (!this.configuration.equals(configuration) || !isRegularFile(bundle)) {
+            return false;
+        }
+        try {
+            return this.bundle.equals(FileStamp.of(bundle));
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a state, returning an empty one when it is missing or was written by a different version.
+     */
+    static PluginBundleState read(Path file)
+            throws IOException
+    {
+        if (!isRegularFile(file)) {
+            return EMPTY;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return EMPTY;
+            }
+            String configuration = in.readUTF();
+            FileStamp bundle = new FileStamp(in.readLong(), in.readLong(), in.readLong());
+            SourceFile[] sourceFiles = new SourceFile[in.readInt()];
+            for (int i = 0; i < sourceFiles.length; i++) {
+                sourceFiles[i] = new SourceFile(in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+            }
+            return new PluginBundleState(configuration, List.of(sourceFiles), bundle);
+        }
+    }
+
+    /**
+     * Writes the state to a temporary file that then replaces the target, so a failed or concurrent write never leaves
+     * a truncated state behind.
+     */
+    void write(Path file)
+            throws IOException
+    {
+        createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(configuration);
+                out.writeLong(bundle.size());
+                out.writeLong(bundle.lastModified());
+                out.writeLong(bundle.directoryChecksum());
+
+                out.writeInt(sourceFiles.size());
+                for (SourceFile sourceFile : sourceFiles) {
+                    out.writeUTF(sourceFile.entryName());
+                    out.writeUTF(sourceFile.path());
+                    out.writeLong(sourceFile.size());
+                    out.writeLong(sourceFile.lastModified());
+                }
+            }
+            move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        }
+        finally {
+            deleteIfExists(temporary);
+        }
+    }
+}
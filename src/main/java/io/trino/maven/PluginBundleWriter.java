@@ -0,0 +1,460 @@
+package io.trino.maven;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Writes a zip straight to a file channel. Stored entries come out as the same bytes as a
+ * {@link java.util.zip.ZipOutputStream} given the same entries, sizes, checksums and times.
+ * <p>
+ * {@code ZipOutputStream} needs the checksum of a stored entry before its data, so every file has to be read once to
+ * checksum it and once more to copy it, both times through heap buffers. This writer instead copies a file whose
+ * checksum is not known yet through a direct buffer, checksumming it on the way, and then patches the checksum into
+ * the local header it already wrote. A file whose checksum is known is transferred by the kernel without passing
+ * through the JVM at all.
+ * <p>
+ * Deflated entries are compressed by the caller, typically in parallel by a {@link ParallelDeflater}, and appended as
+ * is. Their checksum and compressed size are patched into the local header as well, so unlike those written by
+ * {@code ZipOutputStream} they need no data descriptor.
+ */
+final class PluginBundleWriter
+        implements Closeable
+{
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+    private static final int NTFS_EXTRA_FIELD = 0x000a;
+    private static final int EXTENDED_TIMESTAMP_EXTRA_FIELD = 0x5455;
+
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int CRC_OFFSET = 14;
+    private static final int UTF8_FLAG = 0x800;
+    private static final int STORED_VERSION = 10;
+    private static final int DEFLATED_VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final long DOS_TIME_BEFORE_1980 = (1 << 21) | (1 << 16);
+    private static final long UPPER_UNIX_TIME_BOUND = 0x7FFFFFFF;
+    private static final long WINDOWS_EPOCH_IN_MICROSECONDS = -11644473600000000L;
+    private static final long WINDOWS_TIME_NOT_AVAILABLE = Long.MIN_VALUE;
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    private final Optional<FileTime> lastModifiedTime;
+    private final Set<String> names = new HashSet<>();
+    private final List<WrittenEntry> entries = new ArrayList<>();
+    private final ByteBuffer copyBuffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+    private long position;
+    private Optional<DeflatedEntry> deflatedEntry = Optional.empty();
+
+    private record WrittenEntry(byte[] name, int method, long dosTime, long crc, long compressedSize, long size, long offset) {}
+
+    private record DeflatedEntry(byte[] name, long dosTime, long size, long offset, long dataOffset) {}
+
+    /**
+     * Creates the zip file, replacing any existing file. Without a last modified time, each entry is stamped with the
+     * current time, as {@code ZipOutputStream} does.
+     */
+    PluginBundleWriter(Path file, Optional<FileTime> lastModifiedTime)
+            throws IOException
+    {
+        this.lastModifiedTime = requireNonNull(lastModifiedTime, "lastModifiedTime is null");
+        this.channel = FileChannel.open(file, WRITE, CREATE, TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Adds the file as a stored entry and returns its checksum. The size must be the current size of the file, and a
+     * known checksum is trusted as is.
+     */
+    long addFile(String name, Path file, long size, OptionalLong crc)
+            throws IOException
+    {
+        checkNoDeflatedEntry();
+        long offset = position;
+        long dosTime = dosTime();
+        byte[] nameBytes = localHeader(name, ZipDirectory.STORED, dosTime, crc.orElse(0), size, size);
+
+        long actualCrc;
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            if (in.size() != size) {
+                throw new ZipException("File %s changed while it was added to the zip".formatted(file));
+            }
+            if (crc.isPresent()) {
+                transfer(in, 0, size);
+                actualCrc = crc.getAsLong();
+            }
+            else {
+                actualCrc = copyWithChecksum(in, size);
+                writeAt(ByteBuffer.allocate(4).order(LITTLE_ENDIAN).putInt(0, (int) actualCrc), offset + CRC_OFFSET);
+            }
+        }
+        entries.add(new WrittenEntry(nameBytes, ZipDirectory.STORED, dosTime, actualCrc, size, size, offset));
+        return actualCrc;
+    }
+
+    /**
+     * Adds the content as a stored entry.
+     */
+    void addBytes(String name, byte[] content)
+            throws IOException
+    {
+        checkNoDeflatedEntry();
+        long offset = position;
+        long dosTime = dosTime();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        byte[] nameBytes = localHeader(name, ZipDirectory.STORED, dosTime, crc.getValue(), content.length, content.length);
+        write(ByteBuffer.wrap(content));
+        entries.add(new WrittenEntry(nameBytes, ZipDirectory.STORED, dosTime, crc.getValue(), content.length, content.length, offset));
+    }
+
+    /**
+     * Adds an entry of another zip written by this class, copying its stored or deflated data as is. The entry gets a
+     * local header of its own, stamped like all others, so it comes out exactly as if its data had been written again.
+     */
+    void copyEntry(FileChannel zip, ZipDirectory.Entry entry)
+            throws IOException
+    {
+        copyEntry(zip, entry, entry.name());
+    }
+
+    /**
+     * Adds an entry of another zip under a different name, copying its data as is.
+     */
+    void copyEntry(FileChannel zip, ZipDirectory.Entry entry, String name)
+            throws IOException
+    {
+        checkNoDeflatedEntry();
+        if (entry.method() != ZipDirectory.STORED && entry.method() != ZipDirectory.DEFLATED) {
+            throw new ZipException("Unsupported compression method %s for %s".formatted(entry.method(), entry.name()));
+        }
+        long offset = position;
+        long dosTime = dosTime();
+        byte[] nameBytes = localHeader(name, entry.method(), dosTime, entry.crc(), entry.compressedSize(), entry.size());
+        transfer(zip, ZipDirectory.dataOffset(zip, entry), entry.compressedSize());
+        entries.add(new WrittenEntry(nameBytes, entry.method(), dosTime, entry.crc(), entry.compressedSize(), entry.size(), offset));
+    }
+
+    /**
+     * Starts a deflated entry with the given uncompressed size. Its raw deflate data is then appended with
+     * {@link #writeDeflatedData}, and the entry is completed by {@link #finishDeflatedEntry}, before any other entry is
+     * added.
+     */
+    void startDeflatedEntry(String name, long size)
+            throws IOException
+    {
+        checkNoDeflatedEntry();
+        long offset = position;
+        long dosTime = dosTime();
+        byte[] nameBytes = localHeader(name, ZipDirectory.DEFLATED, dosTime, 0, 0, size);
+        deflatedEntry = Optional.of(new DeflatedEntry(nameBytes, dosTime, size, offset, position));
+    }
+
+    void writeDeflatedData(byte[] data)
+            throws IOException
+    {
+        if (deflatedEntry.isEmpty()) {
+            throw new IllegalStateException("No deflated entry started");
+        }
+        write(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Completes the deflated entry with the checksum of its uncompressed data.
+     */
+    void finishDeflatedEntry(long crc)
+            throws IOException
+    {
+        DeflatedEntry entry = deflatedEntry.orElseThrow(() -> new IllegalStateException("No deflated entry started"));
+        deflatedEntry = Optional.empty();
+        long compressedSize = position - entry.dataOffset();
+        ByteBuffer patch = ByteBuffer.allocate(8).order(LITTLE_ENDIAN).putInt((int) crc);
+        if (entry.size() >= ZIP64_MAGIC) {
+            writeAt(patch.flip(), entry.offset() + CRC_OFFSET);
+            // The compressed size follows the size in the zip64 extra field, the first one after the name
+            writeAt(ByteBuffer.allocate(8).order(LITTLE_ENDIAN).putLong(0, compressedSize), entry.offset() + LOCAL_FILE_HEADER_SIZE + entry.name().length + 4 + 8);
+        }
+        else {
+            if (compressedSize >= ZIP64_MAGIC) {
+                throw new ZipException("Compressed size of a deflated entry exceeds its size: " + new String(entry.name(), UTF_8));
+            }
+            writeAt(patch.putInt((int) compressedSize).flip(), entry.offset() + CRC_OFFSET);
+        }
+        entries.add(new WrittenEntry(entry.name(), ZipDirectory.DEFLATED, entry.dosTime(), crc, compressedSize, entry.size(), entry.offset()));
+    }
+
+    /**
+     * Writes the central directory and closes the file.
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        try (channel) {
+            checkNoDeflatedEntry();
+            long directoryOffset = position;
+            for (WrittenEntry entry : entries) {
+                writeCentralDirectoryHeader(entry);
+            }
+            writeEnd(directoryOffset, position - directoryOffset);
+        }
+    }
+
+    private void checkNoDeflatedEntry()
+    {
+        if (deflatedEntry.isPresent()) {
+            throw new IllegalStateException("Deflated entry not finished: " + new String(deflatedEntry.orElseThrow().name(), UTF_8));
+        }
+    }
+
+    private byte[] localHeader(String name, int method, long dosTime, long crc, long compressedSize, long size)
+            throws IOException
+    {
+        byte[] nameBytes = name.getBytes(UTF_8);
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+        boolean zip64 = size >= ZIP64_MAGIC;
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_FILE_HEADER_SIZE + nameBytes.length + (zip64 ? 20 : 0) + timeFieldSize()).order(LITTLE_ENDIAN);
+        header.putInt(LOCAL_FILE_HEADER)
+                .putShort((short) version(method, zip64))
+                .putShort((short) UTF8_FLAG)
+                .putShort((short) method)
+                .putInt((int) dosTime)
+                .putInt((int) crc)
+                .putInt((int) (zip64 ? ZIP64_MAGIC : compressedSize))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : size))
+                .putShort((short) nameBytes.length)
+                .putShort((short) (header.capacity() - LOCAL_FILE_HEADER_SIZE - nameBytes.length))
+                .put(nameBytes);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_FIELD)
+                    .putShort((short) 16)
+                    .putLong(size)
+                    .putLong(compressedSize);
+        }
+        putTimeField(header);
+        write(header.flip());
+        return nameBytes;
+    }
+
+    private void writeCentralDirectoryHeader(WrittenEntry entry)
+            throws IOException
+    {
+        boolean zip64Size = entry.size() >= ZIP64_MAGIC || entry.compressedSize() >= ZIP64_MAGIC;
+        boolean zip64Offset = entry.offset() >= ZIP64_MAGIC;
+        int zip64Length = (zip64Size ? 16 : 0) + (zip64Offset ? 8 : 0);
+        boolean zip64 = zip64Length > 0;
+        int extraLength = (zip64 ? zip64Length + 4 : 0) + timeFieldSize();
+
+        ByteBuffer header = ByteBuffer.allocate(CENTRAL_DIRECTORY_HEADER_SIZE + entry.name().length + extraLength).order(LITTLE_ENDIAN);
+        header.putInt(CENTRAL_DIRECTORY_HEADER)
+                .putShort((short) version(entry.method(), zip64))
+                .putShort((short) version(entry.method(), zip64))
+                .putShort((short) UTF8_FLAG)
+                .putShort((short) entry.method())
+                .putInt((int) entry.dosTime())
+                .putInt((int) entry.crc())
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : entry.compressedSize()))
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size()))
+                .putShort((short) entry.name().length)
+                .putShort((short) extraLength)
+                // comment length, disk number, internal and external attributes
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.offset()))
+                .put(entry.name());
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_FIELD).putShort((short) zip64Length);
+            if (zip64Size) {
+                header.putLong(entry.size()).putLong(entry.compressedSize());
+            }
+            if (zip64Offset) {
+                header.putLong(entry.offset());
+            }
+        }
+        putTimeField(header);
+        write(header.flip());
+    }
+
+    private void writeEnd(long directoryOffset, long directorySize)
+            throws IOException
+    {
+        int count = entries.size();
+        boolean zip64 = directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC || count >= ZIP64_MAGIC_COUNT;
+        ByteBuffer end = ByteBuffer.allocate(22 + (zip64 ? 56 + 20 : 0)).order(LITTLE_ENDIAN);
+        if (zip64) {
+            long zip64EndOffset = position;
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY)
+                    .putLong(56 - 12)
+                    .putShort((short) ZIP64_VERSION)
+                    .putShort((short) ZIP64_VERSION)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(count)
+                    .putLong(count)
+                    .putLong(directorySize)
+                    .putLong(directoryOffset);
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+        }
+        end.putInt(END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putInt((int) Math.min(directorySize, ZIP64_MAGIC))
+                .putInt((int) Math.min(directoryOffset, ZIP64_MAGIC))
+                .putShort((short) 0);
+        write(end.flip());
+    }
+
+    private static int version(int method, boolean zip64)
+    {
+        if (zip64) {
+            return ZIP64_VERSION;
+        }
+        return method == ZipDirectory.DEFLATED ? DEFLATED_VERSION : STORED_VERSION;
+    }
+
+    /**
+     * Returns the size of the extra field holding the last modified time, which, as in {@code ZipOutputStream}, is only
+     * written when a time was set: the Info-ZIP extended timestamp, or an NTFS timestamp for times that do not fit it.
+     * Local and central headers carry the same field.
+     */
+    private int timeFieldSize()
+    {
+        if (lastModifiedTime.isEmpty()) {
+            return 0;
+        }
+        if (lastModifiedTime.orElseThrow().to(SECONDS) > UPPER_UNIX_TIME_BOUND) {
+            return 36;
+        }
+        return 9;
+    }
+
+    private void putTimeField(ByteBuffer header)
+    {
+        if (lastModifiedTime.isEmpty()) {
+            return;
+        }
+        FileTime time = lastModifiedTime.orElseThrow();
+        if (time.to(SECONDS) > UPPER_UNIX_TIME_BOUND) {
+            header.putShort((short) NTFS_EXTRA_FIELD)
+                    .putShort((short) 32)
+                    .putInt(0)
+                    .putShort((short) 0x0001)
+                    .putShort((short) 24)
+                    .putLong((time.to(MICROSECONDS) - WINDOWS_EPOCH_IN_MICROSECONDS) * 10)
+                    .putLong(WINDOWS_TIME_NOT_AVAILABLE)
+                    .putLong(WINDOWS_TIME_NOT_AVAILABLE);
+            return;
+        }
+        // Modification time only
+        header.putShort((short) EXTENDED_TIMESTAMP_EXTRA_FIELD)
+                .putShort((short) 5)
+                .put((byte) 1)
+                .putInt((int) time.to(SECONDS));
+    }
+
+    /**
+     * Returns the DOS date and time of the entry, in the default time zone as {@code ZipEntry} computes it.
+     */
+    private long dosTime()
+    {
+        long millis = lastModifiedTime.map(FileTime::toMillis).orElseGet(System::currentTimeMillis);
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return DOS_TIME_BEFORE_1980;
+        }
+        return ((time.getYear() - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1) & 0xFFFFFFFFL;
+    }
+
+    private void transfer(FileChannel in, long start, long size)
+            throws IOException
+    {
+        long transferred = 0;
+        while (transferred < size) {
+            long count = in.transferTo(start + transferred, size - transferred, channel);
+            if (count <= 0) {
+                throw new ZipException("Unexpected end of file while adding it to the zip");
+            }
+            transferred += count;
+        }
+        position += transferred;
+    }
+
+    private long copyWithChecksum(FileChannel in, long size)
+            throws IOException
+    {
+        CRC32 crc = new CRC32();
+        long copied = 0;
+        while (copied < size) {
+            copyBuffer.clear().limit((int) Math.min(COPY_BUFFER_SIZE, size - copied));
+            if (in.read(copyBuffer, copied) < 0) {
+                throw new ZipException("Unexpected end of file while adding it to the zip");
+            }
+            copyBuffer.flip();
+            copied += copyBuffer.remaining();
+            crc.update(copyBuffer.duplicate());
+            write(copyBuffer);
+        }
+        return crc.getValue();
+    }
+
+    private void write(ByteBuffer buffer)
+            throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+
+    private void writeAt(ByteBuffer buffer, long offset)
+            throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.trino.maven;
+
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Results of dependency collection and resolution, shared by the executions of a build session, so that modules that
+ * issue the same request, such as collecting the graph of the same SPI version, get it from the first one. Concurrent
+ * executions that issue the same request wait for the one that issues it first; a failed request is not cached, so
+ * that the next execution issues it again. Each result is kept with the time it took, which every hit reports as
+ * saved, both in the {@link BuildMetrics} of the execution and in the totals of the session, which
+ * {@link BuildMetricsReporter} logs when the session ends.
+ * <p>
+ * Builds may load several versions of this plugin, each in a class loader of its own, so the session data holds JDK
+ * types only: the results by a list of the request's values, and the totals in an {@link AtomicLongArray}.
+ */
+final class ResolutionCache
+{
+    static final String RESULTS_KEY = "io.trino.maven.ResolutionCache.results";
+    static final String STATS_KEY = "io.trino.maven.ResolutionCache.stats";
+
+    private static final int HITS = 0;
+    private static final int MISSES = 1;
+    private static final int SAVED_NANOS = 2;
+
+    private ResolutionCache() {}
+
+    record Stats(long hits, long misses, long savedNanos) {}
+
+    /**
+     * A request, identified by its kind, such as the scopes it resolves, along with everything that determines its
+     * result within a session.
+     */
+    record Key(String kind, Artifact rootArtifact, Dependency root, List<Dependency> dependencies, List<Dependency> managedDependencies, List<RemoteRepository> repositories)
+    {
+        Key
+        {
+            requireNonNull(kind, "kind is null");
+            dependencies = List.copyOf(dependencies);
+            managedDependencies = List.copyOf(managedDependencies);
+            repositories = List.copyOf(repositories);
+        }
+
+        /**
+         * Returns the values of the request in a list, which other versions of this class compare equal to as well.
+         */
+        private List<Object> values()
+        {
+            return Collections.unmodifiableList(Arrays.asList(kind, rootArtifact, root, dependencies, managedDependencies, repositories));
+        }
+    }
+
+    interface Loader<T, E extends Exception>
+    {
+        T load()
+                throws E;
+    }
+
+    /**
+     * Returns the result of the request, loading it unless an earlier execution of the session did, and counts the
+     * hit or miss along with the time it saved.
+     */
+    @SuppressWarnings("unchecked")
+    static <T, E extends Exception> T get(MavenSession session, Key key, Loader<T, E> loader, BuildMetrics metrics)
+            throws E, InterruptedException
+    {
+        ConcurrentMap<List<Object>, FutureTask<Entry<Object, Long>>> results = (ConcurrentMap<List<Object>, FutureTask<Entry<Object, Long>>>)
+                session.getRepositorySession().getData().computeIfAbsent(RESULTS_KEY, ConcurrentHashMap::new);
+        AtomicLongArray stats = (AtomicLongArray) session.getRepositorySession().getData().computeIfAbsent(STATS_KEY, () -> new AtomicLongArray(3));
+
+        // The result is kept along with the time it took to load
+        FutureTask<Entry<Object, Long>> task = new FutureTask<>(() -> {
+            long start = System.nanoTime();
+            Object value = loader.load();
+            return new SimpleImmutableEntry<>(value, System.nanoTime() - start);
+        });
+        List<Object> values = key.values();
+        FutureTask<Entry<Object, Long>> existing = results.putIfAbsent(values, task);
+        if (existing == null) {
+            task.run();
+            stats.incrementAndGet(MISSES);
+            metrics.count("resolutionCacheMisses", 1);
+        }
+        else {
+            task = existing;
+        }
+
+        try {
+            Entry<Object, Long> result = task.get();
+            if (existing != null) {
+                stats.incrementAndGet(HITS);
+                stats.addAndGet(SAVED_NANOS, result.getValue());
+                metrics.count("resolutionCacheHits", 1);
+                metrics.count("resolutionCacheSavedNanos", result.getValue());
+            }
+            return (T) result.getKey();
+        }
+        catch (ExecutionException e) {
+            results.remove(values, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            // The loader only throws E besides unchecked exceptions
+            throw (E) cause;
+        }
+    }
+
+    /**
+     * Returns the hits and misses of all executions of the session so far, and the time the hits saved, unless no
+     * execution used the cache.
+     */
+    static Optional<Stats> stats(MavenSession session)
+    {
+        return Optional.ofNullable((AtomicLongArray) session.getRepositorySession().getData().get(STATS_KEY))
+                .map(stats -> new Stats(stats.get(HITS), stats.get(MISSES), stats.get(SAVED_NANOS)));
+    }
+}
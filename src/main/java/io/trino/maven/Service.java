@@ -0,0 +1,49 @@
+package io.trino.maven;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A service interface that generate-service-descriptor writes a {@code META-INF/services} descriptor for, configured
+ * as an element of {@code additionalServices}.
+ */
+public class Service
+{
+    public enum Cardinality
+    {
+        /**
+         * The plugin must contain exactly one implementation.
+         */
+        ONE,
+        /**
+         * The plugin must contain at least one implementation; all of them are listed.
+         */
+        MANY,
+    }
+
+    private String className;
+    private Cardinality cardinality = Cardinality.ONE;
+
+    public Service() {}
+
+    Service(String className, Cardinality cardinality)
+    {
+        this.className = requireNonNull(className, "className is null");
+        this.cardinality = requireNonNull(cardinality, "cardinality is null");
+    }
+
+    public String getClassName()
+    {
+        return className;
+    }
+
+    public Cardinality getCardinality()
+    {
+        return cardinality;
+    }
+
+    @Override
+    public String toString()
+    {
+        return className + ":" + cardinality;
+    }
+}
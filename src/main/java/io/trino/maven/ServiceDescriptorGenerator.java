@@ -13,7 +13,12 @@
  */
 package io.trino.maven;
 
+import io.trino.maven.BuildMetrics.Phase;
+import io.trino.maven.ClassHeaderReader.ReferenceFilter;
+import io.trino.maven.ClassHierarchyIndex.ClassFile;
+import io.trino.maven.DependencyClassCache.Stats;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -21,30 +26,42 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
-import org.objectweb.asm.ClassReader;
+
+import javax.inject.Inject;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
-import java.util.stream.Stream;
 
+import static io.trino.maven.Service.Cardinality.ONE;
 import static io.trino.maven.Utils.parseOutputTimestamp;
 import static java.lang.String.join;
 import static java.lang.reflect.Modifier.isAbstract;
@@ -52,9 +69,9 @@ import static java.lang.reflect.Modifier.isInterface;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.exists;
 import static java.nio.file.Files.isDirectory;
-import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.newInputStream;
 import static java.nio.file.Files.newOutputStream;
-import static java.nio.file.Files.readAllBytes;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 
 /**
  * Mojo that generates the service descriptor JAR for Trino plugins.
@@ -69,6 +86,15 @@ public class ServiceDescriptorGenerator
     @Parameter(defaultValue = "io.trino.spi.Plugin")
     private String pluginClassName;
 
+    /**
+     * Further service interfaces, such as event listener factories or internal extension points, to write
+     * descriptors for into the same services jar. They are discovered in the same scan and hierarchy walk as the
+     * plugin class. Each declares a {@code className} and a {@code cardinality}: {@code ONE} (the default) requires
+     * exactly one implementation, {@code MANY} at least one.
+     */
+    @Parameter
+    private final List<Service> additionalServices = new ArrayList<>();
+
     @Parameter(defaultValue = "${project.build.directory}/${project.build.finalName}-services.jar")
     private String servicesJar;
 
@@ -81,238 +107,518 @@ public class ServiceDescriptorGenerator
     @Parameter(defaultValue = "${project.build.outputTimestamp}")
     private String outputTimestamp;
 
+    /**
+     * Number of threads that read and parse the compiled classes. The default of {@code 1} scans on the mojo thread.
+     * Modules with tens of thousands of (typically generated) classes spend most of the scan waiting on file reads,
+     * which more threads overlap. When the class files are in the page cache, as right after compiling, the scan is
+     * bound by parsing, and more threads only help with as many cores to run them. The result does not depend on the
+     * thread count.
+     */
+    @Parameter(property = "trino.plugin.scanThreads", defaultValue = "1")
+    private int scanThreads;
+
+    /**
+     * Whether to skip, without decoding any of their names, local classes that cannot implement a service: those whose
+     * constant pool names neither a service interface nor another local class, and whose superclass and interfaces all
+     * belong to the JDK. A class that extends or implements a dependency class is always kept, as the dependency class,
+     * for example a base plugin class from a shared module, may implement a service. The result does not depend on it.
+     */
+    @Parameter(property = "trino.plugin.prefilterClasses", defaultValue = "false")
+    private boolean prefilterClasses;
+
+    /**
+     * Whether to keep an index of the class hierarchy under the build directory, so that later builds only re-read
+     * the class files that changed and skip the goal entirely when no class file, dependency or setting changed since
+     * the services jar was written. A class file that was added or deleted counts as a change.
+     */
+    @Parameter(property = "trino.plugin.incremental", defaultValue = "false")
+    private boolean incremental;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/class-hierarchy.idx")
+    private String indexFile;
+
+    /**
+     * Estimated size, in megabytes, of the class headers read from dependency jars that are kept in memory for the
+     * rest of the build, so that executions for other modules resolve shared superclasses without reading them again.
+     * The cache is shared by all executions, so the most recently configured size applies; {@code 0} disables it.
+     */
+    @Parameter(property = "trino.plugin.dependencyCacheSize", defaultValue = "64")
+    private long dependencyCacheSize;
+
+    /**
+     * Maximum number of dependency jars held open at once while resolving the hierarchy. Jars are opened only when a
+     * lookup first needs one, and the least recently used is closed to make room for another.
+     */
+    @Parameter(property = "trino.plugin.maxOpenArchives", defaultValue = "16")
+    private int maxOpenArchives;
+
     @Parameter(defaultValue = "${project}")
     private MavenProject project;
 
+    @Inject
+    private MavenSession session;
+
+    @Inject
+    private DependencyClassCache dependencyClassCache;
+
     @Override
     public void execute()
             throws MojoExecutionException
     {
-        Path servicesFile = Path.of(servicesDirectory, pluginClassName);
+        BuildMetrics metrics = BuildMetrics.start(session, "generate-service-descriptor");
+        try {
+            execute(metrics);
+        }
+        finally {
+            metrics.finish();
+        }
+    }
+
+    private void execute(BuildMetrics metrics)
+            throws MojoExecutionException
+    {
+        List<Service> services = services();
         Optional<FileTime> outputTimestamp = parseOutputTimestamp(this.outputTimestamp);
-        if (exists(servicesFile)) {
-            throw new MojoExecutionException("Existing service descriptor for %s found in output directory.".formatted(pluginClassName));
+        for (Service service : services) {
+            if (exists(Path.of(servicesDirectory, service.getClassName()))) {
+                throw new MojoExecutionException("Existing service descriptor for %s found in output directory.".formatted(service.getClassName()));
+            }
         }
 
-        List<String> pluginClasses = findPluginImplementations();
-        if (pluginClasses.isEmpty()) {
-            throw new MojoExecutionException("Trino plugin must contain a class that implements %s.".formatted(pluginClassName));
+        Path classesRoot = Path.of(classesDirectory);
+        Path servicesJarFile = Path.of(servicesJar);
+        String configuration = join("\n", services.toString(), servicesJar, String.valueOf(this.outputTimestamp), String.valueOf(prefilterClasses));
+        List<ClassFile> classFiles;
+        String dependencyFingerprint;
+        ClassHierarchyIndex previousIndex;
+        try (Phase ignored = metrics.phase("index")) {
+            classFiles = listClassFiles(classesRoot);
+            dependencyFingerprint = incremental ? dependencyFingerprint() : "";
+            previousIndex = incremental ? readIndex() : ClassHierarchyIndex.EMPTY;
+        }
+        if (previousIndex.isUpToDate(configuration, dependencyFingerprint, classFiles, servicesJarFile)) {
+            if (getLog().isInfoEnabled()) {
+                getLog().info("Services JAR %s is up to date".formatted(servicesJar));
+            }
+            return;
         }
 
-        if (pluginClasses.size() > 1) {
-            throw new MojoExecutionException(
-                    "Trino plugin must contain only one class that implements %s, but found: %s"
-                            .formatted(pluginClassName, join(", ", pluginClasses)));
+        Map<ClassFile, ClassInfo> localClassInfos;
+        try (Phase ignored = metrics.phase("localScan")) {
+            localClassInfos = scanLocalClasses(classesRoot, classFiles, previousIndex, services, metrics);
         }
+        Map<String, ClassInfo> classInfoMap = new HashMap<>();
+        localClassInfos.values().forEach(classInfo -> classInfoMap.put(classInfo.name, classInfo));
+        Set<String> localClasses = Set.copyOf(classInfoMap.keySet());
+        previousIndex.dependencyClasses(dependencyFingerprint).forEach(classInfoMap::putIfAbsent);
 
-        String implementationName = pluginClasses.get(0);
-        byte[] servicesFileData = (implementationName + "\n").getBytes(UTF_8);
-        try (OutputStream out = newOutputStream(Path.of(servicesJar));
-                JarOutputStream jar = new JarOutputStream(out)) {
-            JarEntry jarEntry = new JarEntry("META-INF/services/" + pluginClassName);
-            outputTimestamp.ifPresent(jarEntry::setLastModifiedTime);
-            jar.putNextEntry(jarEntry);
-            jar.write(servicesFileData);
-            jar.closeEntry();
+        Map<Service, List<String>> implementations;
+        try (Phase ignored = metrics.phase("dependencyLookups")) {
+            implementations = findImplementations(services, localClasses, classInfoMap, metrics);
         }
-        catch (IOException e) {
-            throw new MojoExecutionException("Failed to write services JAR file.", e);
+        for (Service service : services) {
+            List<String> serviceImplementations = implementations.get(service);
+            if (serviceImplementations.isEmpty()) {
+                throw new MojoExecutionException("Trino plugin must contain a class that implements %s.".formatted(service.getClassName()));
+            }
+
+            if (service.getCardinality() == ONE && serviceImplementations.size() > 1) {
+                throw new MojoExecutionException(
+                        "Trino plugin must contain only one class that implements %s, but found: %s"
+                                .formatted(service.getClassName(), join(", ", serviceImplementations)));
+            }
+        }
+
+        try (Phase ignored = metrics.phase("write")) {
+            writeServicesJar(servicesJarFile, services, implementations, outputTimestamp);
         }
+        metrics.count("bytesWritten", servicesJarFile.toFile().length());
         if (getLog().isInfoEnabled()) {
-            getLog().info("Wrote %s to %s".formatted(implementationName, servicesJar));
+            for (Service service : services) {
+                getLog().info("Wrote %s to %s".formatted(join(", ", implementations.get(service)), servicesJar));
+            }
+        }
+
+        if (incremental) {
+            Map<String, ClassInfo> dependencyClasses = new HashMap<>(classInfoMap);
+            dependencyClasses.keySet().removeAll(localClasses);
+            try (Phase ignored = metrics.phase("index")) {
+                new ClassHierarchyIndex(configuration, dependencyFingerprint, classFiles, localClassInfos, dependencyClasses, servicesJarFile)
+                        .write(Path.of(indexFile));
+            }
+            catch (IOException e) {
+                getLog().warn("Failed to write class hierarchy index " + indexFile, e);
+            }
         }
     }
 
-    private List<String> findPluginImplementations()
+    private static void writeServicesJar(Path servicesJarFile, List<Service> services, Map<Service, List<String>> implementations, Optional<FileTime> outputTimestamp)
             throws MojoExecutionException
     {
-        Path classesRoot = Path.of(classesDirectory);
-        if (!isDirectory(classesRoot)) {
-            return List.of();
+        try (OutputStream out = newOutputStream(servicesJarFile);
+                JarOutputStream jar = new JarOutputStream(out)) {
+            for (Service service : services) {
+                JarEntry jarEntry = new JarEntry("META-INF/services/" + service.getClassName());
+                outputTimestamp.ifPresent(jarEntry::setLastModifiedTime);
+                jar.putNextEntry(jarEntry);
+                for (String implementationName : implementations.get(service)) {
+                    jar.write((implementationName + "\n").getBytes(UTF_8));
+                }
+                jar.closeEntry();
+            }
+        }
+        catch (IOException e) {
+            throw new MojoExecutionException("Failed to write services JAR file.", e);
         }
+    }
 
-        Map<String, ClassInfo> classInfoMap = scanLocalClasses(classesRoot);
-        Set<String> localClasses = Set.copyOf(classInfoMap.keySet());
+    /**
+     * Returns the plugin interface followed by the additional services, in configuration order.
+     */
+    private List<Service> services()
+            throws MojoExecutionException
+    {
+        List<Service> services = new ArrayList<>();
+        services.add(new Service(pluginClassName, ONE));
+        services.addAll(additionalServices);
+        Set<String> classNames = new HashSet<>();
+        for (Service service : services) {
+            if (service.getClassName() == null || service.getClassName().isBlank()) {
+                throw new MojoExecutionException("Additional service must declare a className.");
+            }
+            if (!classNames.add(service.getClassName())) {
+                throw new MojoExecutionException("Service %s is configured more than once.".formatted(service.getClassName()));
+            }
+        }
+        // Every service is one bit of the verdicts computed while walking the hierarchy
+        if (services.size() > Long.SIZE) {
+            throw new MojoExecutionException("At most %s services can be discovered, but %s are configured.".formatted(Long.SIZE, services.size()));
+        }
+        return services;
+    }
 
-        // The lists are filled in by the callee so that anything already opened is still closed if it fails part way
-        List<Path> dependencyDirectories = new ArrayList<>();
-        List<JarFile> dependencyJars = new ArrayList<>();
-        try {
-            openDependencyArchives(dependencyDirectories, dependencyJars);
-            return findConcreteImplementations(localClasses, classInfoMap, dependencyDirectories, dependencyJars);
+    private Map<Service, List<String>> findImplementations(List<Service> services, Set<String> localClasses, Map<String, ClassInfo> classInfoMap, BuildMetrics metrics)
+            throws MojoExecutionException
+    {
+        if (dependencyCacheSize < 0) {
+            throw new MojoExecutionException("Dependency cache size must not be negative, but was %s.".formatted(dependencyCacheSize));
+        }
+        if (maxOpenArchives < 1) {
+            throw new MojoExecutionException("Maximum open archives must be at least 1, but was %s.".formatted(maxOpenArchives));
+        }
+        dependencyClassCache.setMaximumWeight(dependencyCacheSize << 20);
+        Stats before = dependencyClassCache.stats();
+        try (DependencyClassResolver dependencies = new DependencyClassResolver(project.getArtifacts(), dependencyClassCache, maxOpenArchives, metrics)) {
+            Map<Service, List<String>> implementations = findConcreteImplementations(services, localClasses, classInfoMap, dependencies);
+            metrics.count("jarsOpened", dependencies.openedArchives());
+            if (getLog().isDebugEnabled()) {
+                getLog().debug("Opened %s dependency archives".formatted(dependencies.openedArchives()));
+            }
+            return implementations;
         }
         catch (IOException e) {
             throw new MojoExecutionException("Could not scan classes", e);
         }
         finally {
-            closeAll(dependencyJars);
+            if (getLog().isDebugEnabled()) {
+                Stats after = dependencyClassCache.stats();
+                getLog().debug("Dependency class cache: %s hits, %s misses in this execution; %s jars, %s bytes, %s evictions in total"
+                        .formatted(after.hits() - before.hits(), after.misses() - before.misses(), after.jars(), after.weight(), after.evictions()));
+            }
         }
     }
 
     /**
-     * Reads every compiled class in the output directory, recording its hierarchy straight from the bytecode.
+     * Lists the compiled classes in the output directory along with their size and modification time, which the
+     * directory walk provides without an extra file system call per class.
      */
-    private static Map<String, ClassInfo> scanLocalClasses(Path classesRoot)
+    static List<ClassFile> listClassFiles(Path classesRoot)
             throws MojoExecutionException
     {
-        Map<String, ClassInfo> classInfoMap = new HashMap<>();
-        try (Stream<Path> paths = Files.walk(classesRoot)) {
-            for (Path classFile : paths.filter(path -> path.toString().endsWith(".class")).toList()) {
-                ClassReader reader = new ClassReader(readAllBytes(classFile));
-                classInfoMap.put(reader.getClassName(), ClassInfo.from(reader));
+        if (!isDirectory(classesRoot)) {
+            return List.of();
+        }
+        List<ClassFile> classFiles = new ArrayList<>();
+        try {
+            Files.walkFileTree(classesRoot, new SimpleFileVisitor<>()
+            {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+                {
+                    if (file.toString().endsWith(".class")) {
+                        String path = classesRoot.relativize(file).toString().replace(File.separatorChar, '/');
+                        classFiles.add(new ClassFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new MojoExecutionException("Could not walk class hierarchy", e);
+        }
+        return classFiles;
+    }
+
+    /**
+     * Reads every compiled class in the output directory that the previous index does not already hold, recording its
+     * hierarchy straight from the bytecode. With more than one thread the files are read concurrently, but the results
+     * are still collected in walk order, so a class name that occurs twice (e.g. in a multi-release
+     * {@code META-INF/versions} directory) resolves as in a serial scan. Classes rejected by the prefilter are left out.
+     */
+    private Map<ClassFile, ClassInfo> scanLocalClasses(Path classesRoot, List<ClassFile> classFiles, ClassHierarchyIndex previousIndex, List<Service> services, BuildMetrics metrics)
+            throws MojoExecutionException
+    {
+        if (scanThreads < 1) {
+            throw new MojoExecutionException("Scan thread count must be at least 1, but was %s.".formatted(scanThreads));
+        }
+
+        Optional<ReferenceFilter> referenceFilter = prefilterClasses ? Optional.of(localReferenceFilter(classFiles, services)) : Optional.empty();
+
+        Map<ClassFile, ClassInfo> classInfos = new LinkedHashMap<>();
+        List<ClassFile> changedClassFiles = new ArrayList<>();
+        for (ClassFile classFile : classFiles) {
+            ClassInfo classInfo = previousIndex.localClass(classFile).orElse(null);
+            // Every file is inserted now to keep the walk order; the ones that have to be read are filled in below
+            classInfos.put(classFile, classInfo);
+            if (classInfo == null) {
+                changedClassFiles.add(classFile);
+            }
+        }
+
+        try {
+            List<ClassInfo> changedClassInfos = readLocalClasses(classesRoot, changedClassFiles, scanThreads, referenceFilter, metrics);
+            for (int i = 0; i < changedClassFiles.size(); i++) {
+                classInfos.put(changedClassFiles.get(i), changedClassInfos.get(i));
             }
         }
         catch (IOException e) {
             throw new MojoExecutionException("Could not walk class hierarchy", e);
         }
-        return classInfoMap;
+        catch (ExecutionException e) {
+            throw new MojoExecutionException("Could not walk class hierarchy", e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while scanning classes", e);
+        }
+
+        classInfos.values().removeIf(Objects::isNull);
+        metrics.count("classesParsed", changedClassFiles.size());
+        if (getLog().isDebugEnabled()) {
+            getLog().debug("Read %s of %s class files".formatted(changedClassFiles.size(), classFiles.size()));
+        }
+        return classInfos;
     }
 
     /**
-     * Opens the dependency archives once, to be kept open for the duration of the scan. Reactor dependencies are
-     * backed by their output directory (e.g. target/classes) rather than a jar, and only real jars can be opened as
-     * archives, so pom-type (BOM/aggregator) and other non-jar artifacts are skipped.
+     * Reads the headers of the class files on the given number of threads, returning them in the order of the files,
+     * with {@code null} for a class rejected by the prefilter.
      */
-    private void openDependencyArchives(List<Path> dependencyDirectories, List<JarFile> dependencyJars)
+    static List<ClassInfo> readLocalClasses(Path classesRoot, List<ClassFile> classFiles, int threads, Optional<ReferenceFilter> referenceFilter, BuildMetrics metrics)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        List<ClassInfo> classInfos = new ArrayList<>(classFiles.size());
+        if (threads == 1 || classFiles.size() < 2) {
+            for (ClassFile classFile : classFiles) {
+                classInfos.add(readLocalClass(classesRoot, classFile, referenceFilter, metrics).orElse(null));
+            }
+            return classInfos;
+        }
+
+        try (ExecutorService executor = newFixedThreadPool(Math.min(threads, classFiles.size()))) {
+            List<Future<Optional<ClassInfo>>> futures = new ArrayList<>(classFiles.size());
+            for (ClassFile classFile : classFiles) {
+                futures.add(executor.submit(() -> readLocalClass(classesRoot, classFile, referenceFilter, metrics)));
+            }
+            for (Future<Optional<ClassInfo>> future : futures) {
+                classInfos.add(future.get().orElse(null));
+            }
+        }
+        return classInfos;
+    }
+
+    private static Optional<ClassInfo> readLocalClass(Path classesRoot, ClassFile classFile, Optional<ReferenceFilter> referenceFilter, BuildMetrics metrics)
             throws IOException
     {
+        try (InputStream in = metrics.counting(newInputStream(classesRoot.resolve(classFile.path())), "bytesRead")) {
+            return Optional.ofNullable(ClassHeaderReader.read(in, referenceFilter.orElse(null)));
+        }
+    }
+
+    /**
+     * Builds the prefilter from the service interfaces and the names of all local classes, which follow from the class
+     * file paths without reading any of them.
+     */
+    private static ReferenceFilter localReferenceFilter(List<ClassFile> classFiles, List<Service> services)
+    {
+        List<String> names = new ArrayList<>();
+        for (Service service : services) {
+            names.add(service.getClassName().replace('.', '/'));
+        }
+        for (ClassFile classFile : classFiles) {
+            names.add(classFile.path().substring(0, classFile.path().length() - ".class".length()));
+        }
+        return new ReferenceFilter(names);
+    }
+
+    /**
+     * Fingerprints the dependency set that headers are resolved from. Jars are identified by path, size and
+     * modification time; reactor dependencies backed by an output directory by the same details of each of their
+     * class files.
+     */
+    private String dependencyFingerprint()
+            throws MojoExecutionException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new MojoExecutionException("SHA-256 is not available", e);
+        }
         for (Artifact artifact : project.getArtifacts()) {
             File file = artifact.getFile();
             if (file == null) {
                 continue;
             }
+            digest.update("%s %s %s\n".formatted(artifact.getId(), artifact.getType(), file).getBytes(UTF_8));
             if (file.isDirectory()) {
-                dependencyDirectories.add(file.toPath());
+                for (ClassFile classFile : listClassFiles(file.toPath())) {
+                    digest.update("%s %s %s\n".formatted(classFile.path(), classFile.size(), classFile.lastModified()).getBytes(UTF_8));
+                }
             }
-            else if (file.isFile() && "jar".equals(artifact.getType())) {
-                dependencyJars.add(new JarFile(file));
+            else {
+                digest.update("%s %s\n".formatted(file.length(), file.lastModified()).getBytes(UTF_8));
             }
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private ClassHierarchyIndex readIndex()
+    {
+        try {
+            return ClassHierarchyIndex.read(Path.of(indexFile));
+        }
+        catch (IOException e) {
+            getLog().debug("Ignoring unreadable class hierarchy index " + indexFile, e);
+            return ClassHierarchyIndex.EMPTY;
+        }
     }
 
     /**
-     * Returns the local classes that can be instantiated as the plugin, i.e. those that are neither abstract nor an
-     * interface and that reach the plugin interface through their hierarchy.
+     * Returns, for each service, the local classes that can be instantiated as it, i.e. those that are neither abstract
+     * nor an interface and that reach the service interface through their hierarchy. All services are resolved in one
+     * walk of the hierarchy, and the implementations of each are sorted by name.
      */
-    private List<String> findConcreteImplementations(
+    static Map<Service, List<String>> findConcreteImplementations(
+            List<Service> services,
             Set<String> localClasses,
             Map<String, ClassInfo> classInfoMap,
-            List<Path> dependencyDirectories,
-            List<JarFile> dependencyJars)
+            DependencyClassResolver dependencies)
             throws IOException
     {
-        String pluginInternalName = pluginClassName.replace('.', '/');
-        List<String> implementations = new ArrayList<>();
+        Map<String, Integer> serviceIndexes = new HashMap<>();
+        Map<Service, List<String>> implementations = new LinkedHashMap<>();
+        for (int i = 0; i < services.size(); i++) {
+            serviceIndexes.put(services.get(i).getClassName().replace('.', '/'), i);
+            implementations.put(services.get(i), new ArrayList<>());
+        }
+
+        Map<String, Long> verdicts = new HashMap<>();
         for (String className : localClasses) {
             ClassInfo classInfo = classInfoMap.get(className);
             if (isAbstract(classInfo.access) || isInterface(classInfo.access)) {
                 continue;
             }
-            if (implementsInterface(className, pluginInternalName, classInfoMap, dependencyDirectories, dependencyJars)) {
-                implementations.add(className.replace('/', '.'));
+            long implementedServices = implementedServices(className, serviceIndexes, classInfoMap, dependencies, verdicts);
+            for (long remaining = implementedServices; remaining != 0; remaining &= remaining - 1) {
+                implementations.get(services.get(Long.numberOfTrailingZeros(remaining))).add(className.replace('/', '.'));
             }
         }
+        implementations.values().forEach(Collections::sort);
         return implementations;
     }
 
-    private static void closeAll(List<JarFile> dependencyJars)
-    {
-        for (JarFile jar : dependencyJars) {
-            try {
-                jar.close();
-            }
-            catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        }
-    }
-
-    private static boolean implementsInterface(
+    /**
+     * Returns the services the class reaches through its superclasses and interfaces, as a bit set of service indexes.
+     * The verdict for every class on the way is memoized, so ancestors shared by many local classes, such as a common
+     * base class, are walked only once and the work over all local classes is linear in the size of the hierarchy.
+     * The hierarchy is walked in post-order with an explicit stack rather than by recursion, so that a deep hierarchy
+     * cannot overflow the thread stack.
+     */
+    private static long implementedServices(
             String className,
-            String targetInternalName,
+            Map<String, Integer> serviceIndexes,
             Map<String, ClassInfo> classInfoMap,
-            List<Path> dependencyDirectories,
-            List<JarFile> dependencyJars)
+            DependencyClassResolver dependencies,
+            Map<String, Long> verdicts)
             throws IOException
     {
-        Set<String> visited = new HashSet<>();
-        Queue<String> pending = new ArrayDeque<>();
-        pending.add(className);
-
-        while (!pending.isEmpty()) {
-            String currentClassName = pending.poll();
-            if (!visited.add(currentClassName)) {
+        // Classes whose ancestors are being walked, which are the classes on the path from the class being resolved
+        Set<String> expanded = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(className);
+        while (!stack.isEmpty()) {
+            String name = stack.peek();
+            if (verdicts.containsKey(name)) {
+                // Pushed more than once, by several subtypes, before it was walked
+                stack.pop();
                 continue;
             }
-
-            ClassInfo classInfo = classInfoMap.get(currentClassName);
+            ClassInfo classInfo = classInfo(name, classInfoMap, dependencies);
             if (classInfo == null) {
-                // Resolve from dependency directories and JARs on demand
-                classInfo = resolveFromDependencies(currentClassName, dependencyDirectories, dependencyJars);
-                if (classInfo != null) {
-                    classInfoMap.put(currentClassName, classInfo);
-                }
-                else {
-                    continue;
-                }
+                verdicts.put(name, 0L);
+                stack.pop();
+                continue;
             }
 
-            if (classInfo.superName != null) {
-                if (classInfo.superName.equals(targetInternalName)) {
-                    return true;
+            if (expanded.add(name)) {
+                for (String ancestorName : ancestors(classInfo)) {
+                    // An ancestor already on the path means a malformed, cyclic hierarchy, which must not be walked forever
+                    if (!verdicts.containsKey(ancestorName) && !expanded.contains(ancestorName)) {
+                        stack.push(ancestorName);
+                    }
                 }
-                pending.add(classInfo.superName);
+                continue;
             }
-            for (String interfaceName : classInfo.interfaces) {
-                if (interfaceName.equals(targetInternalName)) {
-                    return true;
+
+            // All ancestors have been walked
+            long implementedServices = 0;
+            for (String ancestorName : ancestors(classInfo)) {
+                Integer serviceIndex = serviceIndexes.get(ancestorName);
+                if (serviceIndex != null) {
+                    implementedServices |= 1L << serviceIndex;
                 }
-                pending.add(interfaceName);
+                implementedServices |= verdicts.getOrDefault(ancestorName, 0L);
             }
+            verdicts.put(name, implementedServices);
+            expanded.remove(name);
+            stack.pop();
         }
-        return false;
+        return verdicts.get(className);
     }
 
-    private static ClassInfo resolveFromDependencies(
-            String internalName,
-            List<Path> dependencyDirectories,
-            List<JarFile> dependencyJars)
+    private static ClassInfo classInfo(String className, Map<String, ClassInfo> classInfoMap, DependencyClassResolver dependencies)
             throws IOException
     {
-        String entryName = internalName + ".class";
-        for (Path directory : dependencyDirectories) {
-            Path classFile = directory.resolve(entryName);
-            if (isRegularFile(classFile)) {
-                return ClassInfo.from(new ClassReader(readAllBytes(classFile)));
-            }
-        }
-        for (JarFile jarFile : dependencyJars) {
-            JarEntry entry = jarFile.getJarEntry(entryName);
-            if (entry != null) {
-                try (InputStream inputStream = jarFile.getInputStream(entry)) {
-                    return ClassInfo.from(new ClassReader(inputStream));
-                }
+        ClassInfo classInfo = classInfoMap.get(className);
+        if (classInfo == null) {
+            // Resolve from dependency directories and JARs on demand
+            classInfo = dependencies.resolve(className);
+            if (classInfo != null) {
+                classInfoMap.put(className, classInfo);
             }
         }
-        return null;
+        return classInfo;
     }
 
-    private static class ClassInfo
+    private static List<String> ancestors(ClassInfo classInfo)
     {
-        final int access;
-        final String superName;
-        final String[] interfaces;
-
-        static ClassInfo from(ClassReader reader)
-        {
-            return new ClassInfo(reader.getAccess(), reader.getSuperName(), reader.getInterfaces());
-        }
-
-        ClassInfo(int access, String superName, String[] interfaces)
-        {
-            this.access = access;
-            this.superName = superName;
-            this.interfaces = interfaces;
+        List<String> ancestors = new ArrayList<>(classInfo.interfaces.length + 1);
+        if (classInfo.superName != null) {
+            ancestors.add(classInfo.superName);
         }
+        ancestors.addAll(Arrays.asList(classInfo.interfaces));
+        return ancestors;
     }
 }
@@ -0,0 +1,191 @@
+package io.trino.maven;
+
+import org.apache.maven.execution.MavenSession;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * What check-spi-dependencies learned in earlier executions: the dependency closure of each SPI version, kept for the
+ * build session and, for released versions, whose closure never changes, in a directory shared by all builds; and the
+ * fingerprint of the last module dependencies that passed the check, kept under the build directory of the module.
+ * <p>
+ * Files are written to a temporary file and atomically moved into place, so builds running concurrently never see a
+ * partial file. An unreadable file is treated as missing.
+ */
+final class SpiCheckCache
+{
+    static final String SESSION_DATA_KEY = "io.trino.maven.SpiCheckCache";
+
+    private static final int CLOSURE_MAGIC = 0x54505343;
+    private static final int VERDICT_MAGIC = 0x54505356;
+    private static final int VERSION = 1;
+
+    private final ConcurrentMap<String, Set<String>> closures;
+    private final Optional<Path> directory;
+
+    /**
+     * Creates a cache backed by the closures of the session and, if present, by the directory.
+     */
+    SpiCheckCache(MavenSession session, Optional<Path> directory)
+    {
+        this.closures = sessionClosures(session);
+        this.directory = requireNonNull(directory, "directory is null").map(Path::toAbsolutePath);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<String, Set<String>> sessionClosures(MavenSession session)
+    {
+        return (ConcurrentMap<String, Set<String>>) session.getRepositorySession().getData().computeIfAbsent(SESSION_DATA_KEY, ConcurrentHashMap::new);
+    }
+
+    /**
+     * Returns the closure of the SPI with the coordinates, from the session or, for a released SPI, from the directory.
+     */
+    Optional<Set<String>> closure(String groupId, String artifactId, String version, boolean released)
+            throws IOException
+    {
+        String coordinates = groupId + ":" + artifactId + ":" + version;
+        Set<String> closure = closures.get(coordinates);
+        if (closure != null) {
+            return Optional.of(closure);
+        }
+        if (!released || directory.isEmpty()) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(newInputStream(closureFile(groupId, artifactId, version))))) {
+            if (in.readInt() != CLOSURE_MAGIC || in.readInt() != VERSION || !in.readUTF().equals(coordinates)) {
+                return Optional.empty();
+            }
+            int count = in.readInt();
+            Set<String> names = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                names.add(in.readUTF());
+            }
+            closure = Set.copyOf(names);
+        }
+        catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        closures.putIfAbsent(coordinates, closure);
+        return Optional.of(closure);
+    }
+
+    /**
+     * Records the closure of the SPI with the coordinates for the session and, for a released SPI, in the directory.
+     */
+    void putClosure(String groupId, String artifactId, String version, boolean released, Set<String> closure)
+            throws IOException
+    {
+        String coordinates = groupId + ":" + artifactId + ":" + version;
+        closures.putIfAbsent(coordinates, Set.copyOf(closure));
+        if (!released || directory.isEmpty()) {
+            return;
+        }
+        Path file = closureFile(groupId, artifactId, version);
+        write(file, out -> {
+            out.writeInt(CLOSURE_MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(coordinates);
+            List<String> names = closure.stream().sorted().toList();
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the file records the fingerprint as the last one that passed the check.
+     */
+    static boolean hasVerdict(Path file, String fingerprint)
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(newInputStream(file), 512))) {
+            return in.readInt() == VERDICT_MAGIC && in.readInt() == VERSION && in.readUTF().equals(fingerprint);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void putVerdict(Path file, String fingerprint)
+            throws IOException
+    {
+        write(file.toAbsolutePath(), out -> {
+            out.writeInt(VERDICT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+        });
+    }
+
+    /**
+     * Returns a hash of the lines, which are hashed in the order given.
+     */
+    static String fingerprint(List<String> lines)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (String line : lines) {
+            digest.update(line.getBytes(UTF_8));
+            digest.update((byte) '\n');
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Path closureFile(String groupId, String artifactId, String version)
+    {
+        return directory.orElseThrow().resolve(groupId).resolve(artifactId).resolve(version + ".spi");
+    }
+
+    private interface Content
+    {
+        void write(DataOutputStream out)
+                throws IOException;
+    }
+
+    private static void write(Path file, Content content)
+            throws IOException
+    {
+        createDirectories(file.getParent());
+        Path temporary = createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(newOutputStream(temporary)))) {
+                content.write(out);
+            }
+            move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        }
+        finally {
+            deleteIfExists(temporary);
+        }
+    }
+}
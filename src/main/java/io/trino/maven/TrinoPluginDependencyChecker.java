@@ -1,5 +1,6 @@
 package io.trino.maven;
 
+import io.trino.maven.BuildMetrics.Phase;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -12,7 +13,13 @@ import org.eclipse.aether.collection.DependencyCollectionException;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.graph.DependencyNode;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import static io.trino.maven.Utils.aetherArtifact;
@@ -37,6 +44,29 @@ public class TrinoPluginDependencyChecker
     @Parameter
     private final Set<String> allowedProvidedDependencies = new HashSet<>();
 
+    /**
+     * Whether to reuse what earlier executions learned: the dependency closure of the SPI, for the rest of the session
+     * and, for a released SPI, across builds in {@code spiCacheDirectory}; and whether the dependencies of the module
+     * passed the checks, so that a module whose dependencies did not change since is not checked again. Off by default:
+     * a cached closure is trusted without consulting the repositories again, so a released SPI that was redeployed, or
+     * a closure left behind by a build with different repositories, would be checked against stale dependencies.
+     */
+    @Parameter(property = "trino.plugin.spiCache", defaultValue = "false")
+    private boolean spiCache;
+
+    /**
+     * Directory for the SPI closures shared by all builds, by default {@code .cache/trino-maven-plugin/spi-dependencies}
+     * in the local repository.
+     */
+    @Parameter(property = "trino.plugin.spiCacheDirectory")
+    private File spiCacheDirectory;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/spi-check.verdict")
+    private String verdictFile;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String pluginVersion;
+
     @Override
     public void execute()
             throws MojoExecutionException
@@ -46,13 +76,46 @@ public class TrinoPluginDependencyChecker
             return;
         }
 
-        Set<String> spiDependencies = getSpiDependencies();
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("SPI dependencies: " + spiDependencies);
-        }
+        BuildMetrics metrics = BuildMetrics.start(session, "check-spi-dependencies");
+        try {
+            Optional<String> fingerprint = Optional.empty();
+            if (spiCache) {
+                try (Phase ignored = metrics.phase("verdict")) {
+                    fingerprint = verdictFingerprint();
+                    if (fingerprint.isPresent() && SpiCheckCache.hasVerdict(Path.of(verdictFile), fingerprint.orElseThrow())) {
+                        metrics.count("verdictCacheHits", 1);
+                        getLog().debug("Skipping SPI dependency checks, as the dependencies passed them before and did not change since");
+                        return;
+                    }
+                }
+            }
 
-        for (Artifact artifact : project.getArtifacts()) {
-            checkArtifact(artifact, spiDependencies);
+            Set<String> spiDependencies;
+            try (Phase ignored = metrics.phase("spiResolution")) {
+                spiDependencies = getSpiDependencies(metrics);
+            }
+            if (getLog().isDebugEnabled()) {
+                getLog().debug("SPI dependencies: " + spiDependencies);
+            }
+
+            try (Phase ignored = metrics.phase("check")) {
+                for (Artifact artifact : project.getArtifacts()) {
+                    checkArtifact(artifact, spiDependencies);
+                    metrics.count("artifactsChecked", 1);
+                }
+            }
+
+            if (fingerprint.isPresent()) {
+                try {
+                    SpiCheckCache.putVerdict(Path.of(verdictFile), fingerprint.orElseThrow());
+                }
+                catch (IOException e) {
+                    getLog().warn("Failed to write SPI dependency check verdict " + verdictFile, e);
+                }
+            }
+        }
+        finally {
+            metrics.finish();
         }
     }
 
@@ -83,16 +146,69 @@ public class TrinoPluginDependencyChecker
         }
     }
 
-    private Set<String> getSpiDependencies()
+    /**
+     * Returns a fingerprint of everything the checks depend on, or nothing if the module depends on a snapshot of the
+     * SPI, whose dependencies may change without the module noticing.
+     */
+    private Optional<String> verdictFingerprint()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(pluginVersion));
+        lines.add(spiName());
+        allowedProvidedDependencies.stream().sorted().forEach(lines::add);
+        List<String> artifacts = new ArrayList<>();
+        for (Artifact artifact : project.getArtifacts()) {
+            if (isSpiArtifact(artifact) && artifact.isSnapshot()) {
+                return Optional.empty();
+            }
+            artifacts.add("%s %s %s".formatted(artifact.getId(), artifact.getScope(), artifact.getType()));
+        }
+        artifacts.sort(null);
+        lines.addAll(artifacts);
+        return Optional.of(SpiCheckCache.fingerprint(lines));
+    }
+
+    private Set<String> getSpiDependencies(BuildMetrics metrics)
             throws MojoExecutionException
     {
+        Artifact spi = getSpiDependency();
+        Optional<SpiCheckCache> cache = spiCache ? Optional.of(new SpiCheckCache(session, Optional.of(spiCacheDirectory()))) : Optional.empty();
+        if (cache.isPresent()) {
+            try {
+                Optional<Set<String>> closure = cache.orElseThrow().closure(spi.getGroupId(), spi.getArtifactId(), spi.getVersion(), !spi.isSnapshot());
+                if (closure.isPresent()) {
+                    metrics.count("spiClosureCacheHits", 1);
+                    return closure.orElseThrow();
+                }
+            }
+            catch (IOException e) {
+                getLog().debug("Ignoring unreadable SPI dependency closure of " + spi, e);
+            }
+        }
+
         Set<String> spiDependencies = new HashSet<>();
-        for (DependencyNode child : getArtifactDependencies(getSpiDependency()).getRoot().getChildren()) {
+        for (DependencyNode child : getArtifactDependencies(spi, metrics).getRoot().getChildren()) {
             collectSpiDependencies(child, spiDependencies);
         }
+
+        if (cache.isPresent()) {
+            try {
+                cache.orElseThrow().putClosure(spi.getGroupId(), spi.getArtifactId(), spi.getVersion(), !spi.isSnapshot(), spiDependencies);
+            }
+            catch (IOException e) {
+                getLog().debug("Failed to cache SPI dependency closure of " + spi, e);
+            }
+        }
         return spiDependencies;
     }
 
+    private Path spiCacheDirectory()
+    {
+        return spiCacheDirectory != null
+                ? spiCacheDirectory.toPath()
+                : repositorySession().getLocalRepository().getBasedir().toPath().resolve(".cache").resolve("trino-maven-plugin").resolve("spi-dependencies");
+    }
+
     private static void collectSpiDependencies(DependencyNode node, Set<String> spiDependencies)
     {
         if (node.getDependency().isOptional()) {
@@ -107,18 +223,26 @@ public class TrinoPluginDependencyChecker
         }
     }
 
-    private CollectResult getArtifactDependencies(Artifact artifact)
+    /**
+     * Collects the dependency graph of the artifact, or takes it from an earlier execution of the session that
+     * collected the same artifact from the same repositories.
+     */
+    private CollectResult getArtifactDependencies(Artifact artifact, BuildMetrics metrics)
             throws MojoExecutionException
     {
+        Dependency dependency = new Dependency(aetherArtifact(artifact), null);
+        CollectRequest request = new CollectRequest(dependency, remoteRepositories());
+        ResolutionCache.Key key = new ResolutionCache.Key("collect", null, dependency, List.of(), List.of(), request.getRepositories());
         try {
-            Dependency dependency = new Dependency(aetherArtifact(artifact), null);
-            return repositorySystem.collectDependencies(
-                    repositorySession(),
-                    new CollectRequest(dependency, remoteRepositories()));
+            return ResolutionCache.get(session, key, () -> repositorySystem.collectDependencies(repositorySession(), request), metrics);
         }
         catch (DependencyCollectionException e) {
             throw new MojoExecutionException("Failed to resolve dependencies.", e);
         }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while resolving dependencies", e);
+        }
     }
 
     private Artifact getSpiDependency()
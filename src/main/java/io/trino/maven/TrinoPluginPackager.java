@@ -1,5 +1,7 @@
 package io.trino.maven;
 
+import io.trino.maven.BuildMetrics.Phase;
+import io.trino.maven.PluginBundleState.SourceFile;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -7,49 +9,49 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProjectHelper;
-import org.eclipse.aether.RepositorySystemSession;
-import org.eclipse.aether.collection.CollectRequest;
-import org.eclipse.aether.graph.Dependency;
-import org.eclipse.aether.graph.DependencyFilter;
-import org.eclipse.aether.resolution.ArtifactResult;
-import org.eclipse.aether.resolution.DependencyRequest;
-import org.eclipse.aether.resolution.DependencyResolutionException;
-import org.eclipse.aether.util.filter.ScopeDependencyFilter;
 
 import javax.inject.Inject;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
 
 import static io.trino.maven.Utils.groupAwareFileName;
 import static io.trino.maven.Utils.parseOutputTimestamp;
 import static java.io.OutputStream.nullOutputStream;
-import static java.nio.file.Files.copy;
+import static java.lang.String.join;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.move;
 import static java.nio.file.Files.newInputStream;
-import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.Files.readAttributes;
 import static java.nio.file.Files.setLastModifiedTime;
-import static java.nio.file.Files.size;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.util.Map.entry;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.stream.Collectors.toList;
-import static org.apache.maven.RepositoryUtils.toArtifact;
-import static org.apache.maven.RepositoryUtils.toDependency;
-import static org.eclipse.aether.util.artifact.JavaScopes.PROVIDED;
-import static org.eclipse.aether.util.artifact.JavaScopes.SYSTEM;
-import static org.eclipse.aether.util.artifact.JavaScopes.TEST;
 
 @Mojo(name = "package-trino-plugin",
         defaultPhase = LifecyclePhase.PACKAGE,
@@ -58,6 +60,8 @@ import static org.eclipse.aether.util.artifact.JavaScopes.TEST;
 public class TrinoPluginPackager
         extends BaseTrinoPluginMojo
 {
+    private static final int COMPRESSION_SAMPLE_SIZE = 64 * 1024;
+
     @Parameter(defaultValue = "${project.build.directory}/${project.build.finalName}-services.jar")
     private File servicesJar;
 
@@ -74,14 +78,179 @@ public class TrinoPluginPackager
      * Whether to deflate the bundle entries. Off by default: the bundled jars are themselves compressed archives, so
      * deflating them again only recovers the parts that are not, namely their central directories, {@code META-INF}
      * text and any entries the jar itself stored verbatim. That is worth roughly a tenth of the bundle, paid for with
-     * compression time on every build. Enable it to trade a slower package phase for smaller bundles.
+     * compression time on every build. Enable it to trade a slower package phase for smaller bundles. Entries are
+     * deflated in parallel, see {@code compressionThreads}.
      */
     @Parameter(property = "trino.plugin.compressed", defaultValue = "false")
     private boolean compress;
 
+    /**
+     * Number of threads that deflate the entries of a compressed bundle, in chunks of 4 MiB so that large jars are
+     * spread over the threads too. By default, {@code 0}, one per available processor. The bundle does not depend on
+     * the thread count.
+     */
+    @Parameter(property = "trino.plugin.compressionThreads", defaultValue = "0")
+    private int compressionThreads;
+
+    /**
+     * Memory, in megabytes, for the buffers of the chunks being deflated. Once it is used up, the compression threads
+     * wait for the bundle to be written. The bundle does not depend on the memory budget.
+     */
+    @Parameter(property = "trino.plugin.compressionMemory", defaultValue = "64")
+    private int compressionMemory;
+
+    /**
+     * Deflate compression level of a compressed bundle, from {@code 1}, fastest, to {@code 9}, smallest.
+     */
+    @Parameter(property = "trino.plugin.compressionLevel", defaultValue = "6")
+    private int compressionLevel;
+
+    /**
+     * Whether to decide for each entry whether deflating it is worth it, instead of deflating every entry. Most of the
+     * size saved by deflating a bundle comes from a few entries, those whose content the jars do not compress
+     * themselves, so this policy keeps most of the savings for a fraction of the compression time. Implies
+     * {@code compressed}. How every entry was written is reported in {@code compressionReport}.
+     */
+    @Parameter(property = "trino.plugin.adaptiveCompression", defaultValue = "false")
+    private boolean adaptiveCompression;
+
+    /**
+     * Share, in percent, of a jar that the jar itself does not deflate, from which on the adaptive policy deflates it.
+     */
+    @Parameter(property = "trino.plugin.adaptiveNotDeflatedShare", defaultValue = "20")
+    private int adaptiveNotDeflatedShare;
+
+    /**
+     * Share, in percent, that deflating a 64 KiB sample from the start of a file other than a jar must save for the
+     * adaptive policy to deflate the file.
+     */
+    @Parameter(property = "trino.plugin.adaptiveSampleSavings", defaultValue = "10")
+    private int adaptiveSampleSavings;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/compression-report.txt")
+    private String compressionReport;
+
+    /**
+     * Whether to add a {@link PluginBundleIndex} to the bundle, mapping every package of the bundled jars to the jars
+     * that hold it, so that the plugin class loader can go straight to the right jar instead of probing each of them.
+     * Packages held by more than one jar are reported. The index is built from the central directories of the jars,
+     * without reading their content.
+     */
+    @Parameter(property = "trino.plugin.indexPackages", defaultValue = "false")
+    private boolean indexPackages;
+
+    /**
+     * Whether the bundle index also maps every class, which resolves classes of split packages to a single jar at the
+     * cost of a larger index. Implies {@code indexPackages}.
+     */
+    @Parameter(property = "trino.plugin.indexClasses", defaultValue = "false")
+    private boolean indexClasses;
+
+    /**
+     * Number of threads that checksum the upcoming entries of a stored bundle while the current one is copied into it.
+     * At most twice as many entries are checksummed ahead of the copy, so that their files are still in the page cache
+     * when they are copied. By default, {@code 0}, an entry whose checksum is not cached is checksummed while it is
+     * copied, which reads it only once; threads pay off when the jars are on slow storage and not in the page cache.
+     * The bundle does not depend on the thread count.
+     */
+    @Parameter(property = "trino.plugin.checksumThreads", defaultValue = "0")
+    private int checksumThreads;
+
+    /**
+     * Whether to keep the checksums of bundled jars from the local repository, which do not change once there, so that
+     * later builds of any plugin only read those jars to copy them into a stored bundle. Off by default: a cached
+     * checksum is trusted without reading the jar again, so a jar replaced by one of the same size and modification
+     * time, as restoring a CI cache may do, would be bundled with a wrong checksum.
+     */
+    @Parameter(property = "trino.plugin.checksumCache", defaultValue = "false")
+    private boolean checksumCache;
+
+    /**
+     * Directory of the checksum cache. Defaults to {@code .cache/trino-maven-plugin/checksums} in the local repository.
+     * The cache may be shared by any number of concurrent builds.
+     */
+    @Parameter(property = "trino.plugin.checksumCacheDirectory")
+    private File checksumCacheDirectory;
+
+    /**
+     * Whether to keep a record of the bundle under the build directory, so that later builds copy the entries of
+     * unchanged files from the previous bundle as they are, without reading the files or deflating them again, and
+     * skip writing the bundle entirely when no file or setting changed since it was written. Any change to a setting
+     * of this goal, including the thread counts and memory budget, writes the bundle again. The bundle is the same as
+     * that of a clean build.
+     */
+    @Parameter(property = "trino.plugin.incremental", defaultValue = "false")
+    private boolean incremental;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/bundle-state.idx")
+    private String stateFile;
+
+    /**
+     * Directory to lay out the bundle in as well, for example the {@code plugin} directory of a local Trino server.
+     * The bundle goes into a subdirectory named like the top-level directory of the zip, which only holds the bundled
+     * files: files the bundle no longer has are removed. Bundled files are hard links to the resolved artifacts where
+     * possible, and copies otherwise, and only files whose source changed are replaced, so redeploying a plugin takes
+     * next to no time. As the jars may be links into the local repository, they must not be modified in place.
+     */
+    @Parameter(property = "trino.plugin.explodedDirectory")
+    private File explodedDirectory;
+
+    /**
+     * Whether to remove the classes of the runtime dependencies that the plugin cannot reach from the providers of
+     * its {@code META-INF/services} files, which include the plugin class, or from {@code shrinkKeep}, along with the
+     * resources of packages left without classes. A dependency with a reachable class that loads classes by computed
+     * names is kept whole, unless {@code shrinkTrustReflection} is set. The shrunk jars are written to
+     * {@code shrunkDirectory}, and what was removed to {@code shrinkReport}.
+     */
+    @Parameter(property = "trino.plugin.shrink", defaultValue = "false")
+    private boolean shrink;
+
+    /**
+     * Classes to keep in addition to the reachable ones, such as classes the plugin loads by name, given by their
+     * binary name, where {@code *} stands for any part of a name within a package and {@code **} for any part of a
+     * name: {@code com.example.Factory}, {@code com.example.*Factory}, {@code com.example.**}.
+     */
+    @Parameter(property = "trino.plugin.shrinkKeep")
+    private List<String> shrinkKeep = new ArrayList<>();
+
+    /**
+     * Whether to shrink dependencies with reachable classes that load classes by computed names as well, reporting
+     * the classes, instead of keeping such dependencies whole.
+     */
+    @Parameter(property = "trino.plugin.shrinkTrustReflection", defaultValue = "false")
+    private boolean shrinkTrustReflection;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/shrunk")
+    private File shrunkDirectory;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/shrink-report.txt")
+    private String shrinkReport;
+
+    /**
+     * Whether to merge the runtime dependencies, the project jar and the services jar into a single jar, which the
+     * bundle then holds instead of them, so that the plugin class loader opens one archive. Entries are copied without
+     * being decompressed. {@code META-INF/services} files are merged, license and notice files that differ from those
+     * of an earlier jar are kept under {@code META-INF/licenses/<jar>/}, and signature files and module descriptors are
+     * left out; any other entry that several jars hold with different content fails the build. What was merged is
+     * written to {@code mergeReport}.
+     */
+    @Parameter(property = "trino.plugin.mergeJars", defaultValue = "false")
+    private boolean mergeJars;
+
+    @Parameter(defaultValue = "${project.build.directory}/${project.build.finalName}-merged.jar")
+    private File mergedJar;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/merge-report.txt")
+    private String mergeReport;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/merged-jar-state.idx")
+    private String mergeStateFile;
+
     @Inject
     private MavenProjectHelper projectHelper;
 
+    private record PreviousBundle(FileChannel channel, Map<String, ZipDirectory.Entry> entries) {}
+
     @Override
     public void execute()
             throws MojoExecutionException
@@ -91,20 +260,93 @@ public class TrinoPluginPackager
             return;
         }
 
+        BuildMetrics metrics = BuildMetrics.start(session, "package-trino-plugin");
+        try {
+            execute(metrics);
+        }
+        finally {
+            metrics.finish();
+        }
+    }
+
+    private void execute(BuildMetrics metrics)
+            throws MojoExecutionException
+    {
         String prefix = project.getArtifactId() + "-" + project.getVersion() + "/";
         Optional<FileTime> timestamp = parseOutputTimestamp(outputTimestamp);
         File projectJar = project.getArtifact().getFile();
-        writeBundle(collectBundleEntries(prefix), timestamp);
+        List<Entry<String, Path>> bundleEntries;
+        try (Phase ignored = metrics.phase("resolution")) {
+            bundleEntries = collectBundleEntries(prefix, metrics);
+        }
+        if (shrink) {
+            bundleEntries = shrinkDependencies(prefix, bundleEntries, timestamp, metrics);
+        }
+        if (mergeJars) {
+            bundleEntries = List.of(entry(prefix + mergedJar.getName(), mergeJars(prefix, bundleEntries, timestamp, metrics)));
+        }
 
-        // Set the timestamp on the archive file itself for reproducible builds
-        if (timestamp.isPresent()) {
-            try {
-                setLastModifiedTime(outputFile.toPath(), timestamp.orElseThrow());
+        Path bundleFile = outputFile.toPath();
+        String configuration = join(
+                "\n",
+                prefix,
+                String.valueOf(outputTimestamp),
+                String.valueOf(mergeJars),
+                String.valueOf(compress),
+                String.valueOf(adaptiveCompression),
+                String.valueOf(compressionLevel),
+                String.valueOf(adaptiveNotDeflatedShare),
+                String.valueOf(adaptiveSampleSavings),
+                String.valueOf(indexPackages),
+                String.valueOf(indexClasses),
+                String.valueOf(compressionThreads),
+                String.valueOf(compressionMemory),
+                String.valueOf(checksumThreads),
+                String.valueOf(checksumCache),
+                String.valueOf(checksumCacheDirectory));
+        List<SourceFile> sourceFiles = List.of();
+        PluginBundleState previousState = PluginBundleState.EMPTY;
+        if (incremental) {
+            try (Phase ignored = metrics.phase("incremental")) {
+                sourceFiles = sourceFiles(bundleEntries);
+                previousState = readState(stateFile);
             }
-            catch (IOException e) {
-                throw new MojoExecutionException("Failed to set timestamp on plugin zip.", e);
+        }
+        if (previousState.isUpToDate(configuration, sourceFiles, bundleFile)) {
+            if (getLog().isInfoEnabled()) {
+                getLog().info("Trino plugin package %s is up to date".formatted(outputFile.getName()));
             }
         }
+        else {
+            writeBundle(prefix, bundleEntries, timestamp, reusableEntries(previousState, configuration, sourceFiles), metrics);
+            metrics.count("bytesWritten", outputFile.length());
+
+            // Set the timestamp on the archive file itself for reproducible builds
+            if (timestamp.isPresent()) {
+                try {
+                    setLastModifiedTime(bundleFile, timestamp.orElseThrow());
+                }
+                catch (IOException e) {
+                    throw new MojoExecutionException("Failed to set timestamp on plugin zip.", e);
+                }
+            }
+
+            if (incremental) {
+                try (Phase ignored = metrics.phase("incremental")) {
+                    new PluginBundleState(configuration, sourceFiles, bundleFile).write(Path.of(stateFile));
+                }
+                catch (IOException e) {
+                    getLog().warn("Failed to write plugin bundle state " + stateFile, e);
+                }
+            }
+            if (getLog().isInfoEnabled()) {
+                getLog().info("Created Trino plugin package: %s".formatted(outputFile.getName()));
+            }
+        }
+
+        if (explodedDirectory != null) {
+            explode(prefix, bundleEntries, metrics);
+        }
 
         // The trino-plugin artifact handler uses the zip extension, so the main artifact is the plugin bundle. Attach
         // the classes jar as an additional artifact so it is installed and deployed too: plugin modules are legitimately
@@ -112,16 +354,13 @@ public class TrinoPluginPackager
         projectHelper.attachArtifact(project, "jar", projectJar);
 
         project.getArtifact().setFile(outputFile);
-        if (getLog().isInfoEnabled()) {
-            getLog().info("Created Trino plugin package: %s".formatted(outputFile.getName()));
-        }
     }
 
     /**
      * Collects the files to bundle, keyed by their flat entry name: the runtime classpath jars plus the main project
      * jar and the generated services jar.
      */
-    private List<Entry<String, Path>> collectBundleEntries(String prefix)
+    private List<Entry<String, Path>> collectBundleEntries(String prefix, BuildMetrics metrics)
             throws MojoExecutionException
     {
         // entryName -> filePath
@@ -129,7 +368,7 @@ public class TrinoPluginPackager
 
         // Collect runtime classpath artifacts (same logic as Provisio's getRuntimeClasspathAsArtifactSet)
         Map<String, org.eclipse.aether.artifact.Artifact> seenEntries = new HashMap<>();
-        for (org.eclipse.aether.artifact.Artifact artifact : resolveRuntimeScopeTransitively()) {
+        for (org.eclipse.aether.artifact.Artifact artifact : resolveRuntimeScopeTransitively(metrics)) {
             // Skip pom-type artifacts (e.g. aggregator/BOM dependencies); only real classpath jars belong in the bundle
             if ("pom".equals(artifact.getExtension())) {
                 continue;
@@ -171,99 +410,548 @@ public class TrinoPluginPackager
         return filesToAdd;
     }
 
-    private void writeBundle(List<Entry<String, Path>> filesToAdd, Optional<FileTime> timestamp)
+    /**
+     * Replaces the runtime dependencies by their shrunk jars. The project jar and the services jar are analyzed, but
+     * never shrunk.
+     */
+    private List<Entry<String, Path>> shrinkDependencies(String prefix, List<Entry<String, Path>> bundleEntries, Optional<FileTime> timestamp, BuildMetrics metrics)
             throws MojoExecutionException
     {
-        try (OutputStream out = new BufferedOutputStream(newOutputStream(outputFile.toPath()));
-                ZipOutputStream zip = new ZipOutputStream(out)) {
-            zip.setMethod(compress ? ZipOutputStream.DEFLATED : ZipOutputStream.STORED);
-            for (Entry<String, Path> file : filesToAdd) {
-                zip.putNextEntry(bundleEntry(file.getKey(), file.getValue(), timestamp));
-                copy(file.getValue(), zip);
-                zip.closeEntry();
+        Path projectJar = project.getArtifact().getFile().toPath();
+        List<Entry<String, Path>> shrunkEntries = new ArrayList<>(bundleEntries.size());
+        try (Phase ignored = metrics.phase("shrink");
+                BundleShrinker shrinker = new BundleShrinker(shrinkKeep, shrinkTrustReflection)) {
+            for (Entry<String, Path> file : bundleEntries) {
+                Path path = file.getValue();
+                shrinker.addJar(file.getKey().substring(prefix.length()), path, !path.equals(projectJar) && !path.equals(servicesJar.toPath()));
+            }
+            shrinker.shrink(shrunkDirectory.toPath(), timestamp);
+            shrinker.writeReport(Path.of(shrinkReport));
+            for (Entry<String, Path> file : bundleEntries) {
+                shrunkEntries.add(entry(file.getKey(), shrinker.file(file.getKey().substring(prefix.length()))));
+            }
+
+            for (Entry<String, String> jar : shrinker.keptWholeJars().entrySet()) {
+                getLog().warn("Kept %s whole, as it cannot be shrunk safely: %s".formatted(jar.getKey(), jar.getValue()));
+            }
+            if (shrinkTrustReflection && !shrinker.reflectiveClasses().isEmpty()) {
+                getLog().warn("Shrunk dependencies with %s reachable classes that load classes by name, such as %s; keep the classes they load with shrinkKeep"
+                        .formatted(shrinker.reflectiveClasses().size(), shrinker.reflectiveClasses().keySet().iterator().next()));
+            }
+            metrics.count("shrinkRemovedEntries", shrinker.removedEntries());
+            metrics.count("shrinkRemovedBytes", shrinker.removedBytes());
+            if (getLog().isInfoEnabled()) {
+                getLog().info("Shrunk %s jars, removing %s entries of %s bytes; see %s"
+                        .formatted(shrinker.shrunkJars(), shrinker.removedEntries(), shrinker.removedBytes(), shrinkReport));
             }
         }
         catch (IOException e) {
-            throw new MojoExecutionException("Failed to create plugin zip.", e);
+            throw new MojoExecutionException("Failed to shrink plugin dependencies.", e);
         }
+        return shrunkEntries;
     }
 
     /**
-     * Resolves the runtime classpath transitively instead of relying on the resolution scope requested by this Mojo.
-     * This works around <a href="https://issues.apache.org/jira/browse/MNG-8041">MNG-8041</a>, where a dependency
-     * declared directly with {@code test} (or {@code provided}) scope masks the same artifact required transitively at
-     * runtime (for example {@code io.airlift:log}, needed via {@code io.airlift:bootstrap}). Dropping the test-scoped
-     * direct dependencies before collection lets the surviving compile/runtime path be included in the bundle.
+     * Merges the bundled files into {@code mergedJar}, unless the record kept by an earlier build shows that neither
+     * they nor the timestamp changed since.
      */
-    private List<org.eclipse.aether.artifact.Artifact> resolveRuntimeScopeTransitively()
+    private Path mergeJars(String prefix, List<Entry<String, Path>> bundleEntries, Optional<FileTime> timestamp, BuildMetrics metrics)
             throws MojoExecutionException
     {
-        RepositorySystemSession repositorySession = repositorySession();
-        DependencyFilter runtimeFilter = new ScopeDependencyFilter(SYSTEM, PROVIDED, TEST);
-        List<Dependency> dependencies = new ArrayList<>();
-        for (org.apache.maven.model.Dependency dependency : project.getDependencies()) {
-            String scope = dependency.getScope();
-            // Drop non-runtime direct dependencies before collection. Leaving provided/system-scoped direct
-            // declarations in lets conflict mediation prefer the wrong artifact before the ScopeDependencyFilter runs.
-            if (TEST.equals(scope) || PROVIDED.equals(scope) || SYSTEM.equals(scope)) {
-                continue;
+        Path mergedFile = mergedJar.toPath();
+        List<Entry<String, Path>> jars = bundleEntries.stream()
+                .map(file -> entry(file.getKey().substring(prefix.length()), file.getValue()))
+                .collect(toList());
+        String configuration = String.valueOf(outputTimestamp);
+        List<SourceFile> sourceFiles = List.of();
+        if (incremental) {
+            try (Phase ignored = metrics.phase("incremental")) {
+                sourceFiles = sourceFiles(jars);
+                if (readState(mergeStateFile).isUpToDate(configuration, sourceFiles, mergedFile)) {
+                    if (getLog().isInfoEnabled()) {
+                        getLog().info("Merged Trino plugin jar %s is up to date".formatted(mergedJar.getName()));
+                    }
+                    return mergedFile;
+                }
+            }
+        }
+
+        try (Phase ignored = metrics.phase("merge");
+                JarMerger merger = new JarMerger(jars)) {
+            if (!merger.conflicts().isEmpty()) {
+                List<String> conflicts = merger.conflicts().entrySet().stream()
+                        .map(conflict -> "%s (%s)".formatted(conflict.getKey(), join(", ", conflict.getValue())))
+                        .collect(toList());
+                throw new MojoExecutionException("Plugin jars cannot be merged, as they hold %s entries with different content: %s%s".formatted(
+                        conflicts.size(),
+                        join(", ", conflicts.subList(0, Math.min(conflicts.size(), 10))),
+                        conflicts.size() > 10 ? ", ..." : ""));
+            }
+            Path temporary = createTempFile(mergedFile.toAbsolutePath().getParent(), mergedJar.getName(), ".tmp");
+            try {
+                merger.write(temporary, timestamp);
+                move(temporary, mergedFile, ATOMIC_MOVE, REPLACE_EXISTING);
+            }
+            finally {
+                deleteIfExists(temporary);
+            }
+            merger.writeReport(Path.of(mergeReport));
+
+            metrics.count("jarsMerged", merger.jars());
+            metrics.count("mergedEntries", merger.entries());
+            if (getLog().isInfoEnabled()) {
+                getLog().info("Merged %s jars into %s: %s entries, %s service files, %s license files, %s entries left out"
+                        .formatted(merger.jars(), mergedJar.getName(), merger.entries(), merger.serviceFiles(), merger.licenseFiles(), merger.skippedEntries()));
+            }
+        }
+        catch (IOException e) {
+            throw new MojoExecutionException("Failed to merge plugin jars into %s.".formatted(mergedJar), e);
+        }
+
+        if (incremental) {
+            try (Phase ignored = metrics.phase("incremental")) {
+                new PluginBundleState(configuration, sourceFiles, mergedFile).write(Path.of(mergeStateFile));
+            }
+            catch (IOException e) {
+                getLog().warn("Failed to write merged jar state " + mergeStateFile, e);
+            }
+        }
+        return mergedFile;
+    }
+
+    private static List<SourceFile> sourceFiles(List<Entry<String, Path>> bundleEntries)
+            throws MojoExecutionException
+    {
+        List<SourceFile> sourceFiles = new ArrayList<>(bundleEntries.size());
+        for (Entry<String, Path> entry : bundleEntries) {
+            try {
+                sourceFiles.add(SourceFile.of(entry.getKey(), entry.getValue()));
+            }
+            catch (IOException e) {
+                throw new MojoExecutionException("Failed to read attributes of " + entry.getValue(), e);
+            }
+        }
+        return sourceFiles;
+    }
+
+    private PluginBundleState readState(String file)
+    {
+        try {
+            return PluginBundleState.read(Path.of(file));
+        }
+        catch (IOException e) {
+            getLog().debug("Ignoring unreadable plugin bundle state " + file, e);
+            return PluginBundleState.EMPTY;
+        }
+    }
+
+    private Map<String, ZipDirectory.Entry> reusableEntries(PluginBundleState previousState, String configuration, List<SourceFile> sourceFiles)
+    {
+        try {
+            return previousState.reusableEntries(configuration, sourceFiles, outputFile.toPath());
+        }
+        catch (IOException e) {
+            getLog().debug("Ignoring unreadable previous plugin bundle " + outputFile, e);
+            return Map.of();
+        }
+    }
+
+    private void writeBundle(String prefix, List<Entry<String, Path>> filesToAdd, Optional<FileTime> timestamp, Map<String, ZipDirectory.Entry> reusableEntries, BuildMetrics metrics)
+            throws MojoExecutionException
+    {
+        if (checksumThreads < 0) {
+            throw new MojoExecutionException("Checksum thread count must not be negative, but was %s.".formatted(checksumThreads));
+        }
+        if (compressionThreads < 0) {
+            throw new MojoExecutionException("Compression thread count must not be negative, but was %s.".formatted(compressionThreads));
+        }
+        if (compressionLevel < 1 || compressionLevel > 9) {
+            throw new MojoExecutionException("Compression level must be between 1 and 9, but was %s.".formatted(compressionLevel));
+        }
+        if (compressionMemory <= 0) {
+            throw new MojoExecutionException("Compression memory must be positive, but was %s.".formatted(compressionMemory));
+        }
+        Optional<PluginBundleIndex.Builder> index = indexPackages || indexClasses ? Optional.of(new PluginBundleIndex.Builder(indexClasses)) : Optional.empty();
+        Path bundleFile = outputFile.toPath();
+        try {
+            if (reusableEntries.isEmpty()) {
+                writeBundle(bundleFile, prefix, filesToAdd, timestamp, index, Optional.empty(), metrics);
+                return;
+            }
+            // Entries are copied from the previous bundle, so the new one is written next to it and then replaces it
+            Path temporary = createTempFile(bundleFile.toAbsolutePath().getParent(), bundleFile.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel previous = FileChannel.open(bundleFile, READ)) {
+                    writeBundle(temporary, prefix, filesToAdd, timestamp, index, Optional.of(new PreviousBundle(previous, reusableEntries)), metrics);
+                }
+                move(temporary, bundleFile, ATOMIC_MOVE, REPLACE_EXISTING);
+            }
+            finally {
+                deleteIfExists(temporary);
             }
-            dependencies.add(toDependency(dependency, repositorySession.getArtifactTypeRegistry()));
+            if (getLog().isInfoEnabled()) {
+                getLog().info("Reused %s of %s entries of the previous Trino plugin package".formatted(reusableEntries.size(), filesToAdd.size()));
+            }
+        }
+        catch (IOException e) {
+            throw new MojoExecutionException("Failed to create plugin zip.", e);
+        }
+        catch (ExecutionException e) {
+            throw new MojoExecutionException("Failed to create plugin zip.", e.getCause());
         }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while creating plugin zip", e);
+        }
+    }
 
-        List<Dependency> managedDependencies = new ArrayList<>();
-        if (project.getDependencyManagement() != null) {
-            for (org.apache.maven.model.Dependency dependency : project.getDependencyManagement().getDependencies()) {
-                managedDependencies.add(toDependency(dependency, repositorySession.getArtifactTypeRegistry()));
+    private void writeBundle(
+            Path bundleFile,
+            String prefix,
+            List<Entry<String, Path>> filesToAdd,
+            Optional<FileTime> timestamp,
+            Optional<PluginBundleIndex.Builder> index,
+            Optional<PreviousBundle> previousBundle,
+            BuildMetrics metrics)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        if (compress || adaptiveCompression) {
+            writeDeflatedBundle(bundleFile, prefix, filesToAdd, timestamp, index, previousBundle, metrics);
+        }
+        else {
+            writeStoredBundle(bundleFile, prefix, filesToAdd, timestamp, index, previousBundle, metrics);
+        }
+    }
+
+    /**
+     * Writes the bundle through a {@link PluginBundleWriter}, which reads each file only once. The checksum of a file
+     * is taken from the cache or from the checksum threads if they have it, in which case the file is transferred
+     * without passing through the heap; otherwise it is computed while the file is copied.
+     */
+    private void writeStoredBundle(
+            Path bundleFile,
+            String prefix,
+            List<Entry<String, Path>> filesToAdd,
+            Optional<FileTime> timestamp,
+            Optional<PluginBundleIndex.Builder> index,
+            Optional<PreviousBundle> previousBundle,
+            BuildMetrics metrics)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        Optional<ChecksumCache> checksums = checksumCache ? Optional.of(checksumCache()) : Optional.empty();
+        int readAhead = checksumThreads * 2;
+        // Without threads every entry is checksummed while it is copied, on this thread
+        Optional<ExecutorService> executor = checksumThreads == 0 ? Optional.empty() : Optional.of(newFixedThreadPool(checksumThreads));
+        try (PluginBundleWriter bundle = new PluginBundleWriter(bundleFile, timestamp)) {
+            Queue<Future<StoredFile>> upcomingFiles = new ArrayDeque<>();
+            int submitted = 0;
+            for (Entry<String, Path> file : filesToAdd) {
+                indexJar(index, prefix, file, metrics);
+                if (copyPreviousEntry(bundle, previousBundle, file.getKey(), metrics)) {
+                    continue;
+                }
+                // The queue holds this file and the next ones to be added, in bundle order, checksummed by the
+                // executor while earlier files are copied
+                while (submitted < filesToAdd.size() && upcomingFiles.size() < readAhead) {
+                    Entry<String, Path> upcoming = filesToAdd.get(submitted++);
+                    if (previousEntry(previousBundle, upcoming.getKey()).isEmpty()) {
+                        upcomingFiles.add(executor.orElseThrow().submit(() -> storedFile(upcoming.getValue(), checksums, true, metrics)));
+                    }
+                }
+                StoredFile storedFile;
+                try (Phase ignored = metrics.phase("checksum")) {
+                    storedFile = readAhead == 0 ? storedFile(file.getValue(), checksums, false, metrics) : upcomingFiles.remove().get();
+                }
+                long crc;
+                try (Phase ignored = metrics.phase("zipWriting")) {
+                    crc = bundle.addFile(file.getKey(), file.getValue(), storedFile.attributes().size(), storedFile.crc());
+                }
+                metrics.count("bytesRead", storedFile.attributes().size());
+                metrics.count("entries", 1);
+                if (storedFile.crc().isEmpty()) {
+                    cacheChecksum(file.getValue(), storedFile.attributes(), crc, checksums);
+                }
+            }
+            if (index.isPresent()) {
+                bundle.addBytes(prefix + PluginBundleIndex.ENTRY_NAME, indexContent(index.orElseThrow().build()));
             }
         }
+        finally {
+            executor.ifPresent(ExecutorService::close);
+        }
+    }
 
-        CollectRequest collectRequest = new CollectRequest();
-        collectRequest.setRootArtifact(toArtifact(project.getArtifact()));
-        collectRequest.setRepositories(remoteRepositories());
-        collectRequest.setDependencies(dependencies);
-        collectRequest.setManagedDependencies(managedDependencies);
+    /**
+     * Writes the bundle through a {@link ParallelDeflater}, deflating every entry or, with the adaptive policy, those
+     * that are worth it. Stored and reused entries are added in their turn while later entries are being deflated. The
+     * time spent waiting for the compression threads is part of the zip writing phase.
+     */
+    private void writeDeflatedBundle(
+            Path bundleFile,
+            String prefix,
+            List<Entry<String, Path>> filesToAdd,
+            Optional<FileTime> timestamp,
+            Optional<PluginBundleIndex.Builder> index,
+            Optional<PreviousBundle> previousBundle,
+            BuildMetrics metrics)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        int threads = compressionThreads == 0 ? Runtime.getRuntime().availableProcessors() : compressionThreads;
+        CompressionReport report = new CompressionReport();
+        Map<String, String> deflateReasons = new HashMap<>();
+        try (PluginBundleWriter bundle = new PluginBundleWriter(bundleFile, timestamp);
+                ParallelDeflater deflater = new ParallelDeflater(bundle, threads, compressionLevel, compressionMemory * 1024L * 1024L, metrics)) {
+            for (Entry<String, Path> file : filesToAdd) {
+                indexJar(index, prefix, file, metrics);
+                metrics.count("entries", 1);
+                Optional<ZipDirectory.Entry> previous = previousEntry(previousBundle, file.getKey());
+                if (previous.isPresent()) {
+                    ZipDirectory.Entry entry = previous.orElseThrow();
+                    deflater.addWritten(writer -> writer.copyEntry(previousBundle.orElseThrow().channel(), entry));
+                    metrics.count("entriesReused", 1);
+                    report.add(new CompressionReport.Entry(entry.name(), entry.method(), entry.size(), entry.compressedSize(), 0, "reused"));
+                    continue;
+                }
+                long size = readAttributes(file.getValue(), BasicFileAttributes.class).size();
+                Compression compression;
+                try (Phase ignored = metrics.phase("compressionPolicy")) {
+                    compression = compression(file, size);
+                }
+                if (!compression.deflate()) {
+                    deflater.addWritten(writer -> writer.addFile(file.getKey(), file.getValue(), size, OptionalLong.empty()));
+                    metrics.count("bytesRead", size);
+                    report.add(new CompressionReport.Entry(file.getKey(), ZipDirectory.STORED, size, size, 0, compression.reason()));
+                    continue;
+                }
+                deflateReasons.put(file.getKey(), compression.reason());
+                try (Phase ignored = metrics.phase("zipWriting")) {
+                    deflater.addFile(file.getKey(), file.getValue(), size);
+                }
+            }
+            if (index.isPresent()) {
+                deflateReasons.put(prefix + PluginBundleIndex.ENTRY_NAME, "bundle index");
+                deflater.addBytes(prefix + PluginBundleIndex.ENTRY_NAME, indexContent(index.orElseThrow().build()));
+            }
+            try (Phase ignored = metrics.phase("zipWriting")) {
+                deflater.finish();
+            }
+            for (ParallelDeflater.DeflatedEntry entry : deflater.deflatedEntries()) {
+                report.add(new CompressionReport.Entry(entry.name(), ZipDirectory.DEFLATED, entry.size(), entry.compressedSize(), entry.deflateNanos(), deflateReasons.get(entry.name())));
+            }
+        }
+
+        metrics.count("bytesSavedByCompression", report.savedBytes());
+        metrics.count("deflateNanos", report.deflateNanos());
+        try {
+            report.write(Path.of(compressionReport));
+        }
+        catch (IOException e) {
+            getLog().warn("Failed to write compression report " + compressionReport, e);
+        }
+        if (getLog().isInfoEnabled()) {
+            getLog().info("Deflated %s of %s entries, saving %s of %s bytes in %.3f s of compression time (see %s)"
+                    .formatted(report.deflatedEntries(), report.entries(), report.savedBytes(), report.size(), report.deflateNanos() / 1e9, compressionReport));
+        }
+    }
+
+    private record Compression(boolean deflate, String reason) {}
+
+    /**
+     * Decides whether to deflate an entry. Without the adaptive policy every entry is. A jar is deflated when the share
+     * of it that the jar does not deflate itself, its stored entries, headers and central directory, reaches the
+     * threshold. Any other file, and a jar that cannot be read as one, is deflated when deflating a sample from its
+     * start saves at least the given share of the sample.
+     */
+    private Compression compression(Entry<String, Path> file, long size)
+            throws IOException
+    {
+        if (!adaptiveCompression) {
+            return new Compression(true, "compressed");
+        }
+        if (file.getKey().endsWith(".jar") && size > 0) {
+            try (FileChannel channel = FileChannel.open(file.getValue(), READ)) {
+                long deflatedBytes = 0;
+                for (ZipDirectory.Entry entry : ZipDirectory.read(channel)) {
+                    if (entry.method() == ZipDirectory.DEFLATED) {
+                        deflatedBytes += entry.compressedSize();
+                    }
+                }
+                long notDeflatedPercent = (size - deflatedBytes) * 100 / size;
+                return new Compression(notDeflatedPercent >= adaptiveNotDeflatedShare, "%s%% not deflated by the jar".formatted(notDeflatedPercent));
+            }
+            catch (ZipException e) {
+                getLog().debug("Sampling %s, which is not a readable jar".formatted(file.getValue()), e);
+            }
+        }
+        long savedPercent = sampleSavingsPercent(file.getValue(), size);
+        return new Compression(savedPercent >= adaptiveSampleSavings, "%s%% saved on a sample".formatted(savedPercent));
+    }
 
-        DependencyRequest dependencyRequest = new DependencyRequest(collectRequest, runtimeFilter);
+    private long sampleSavingsPercent(Path file, long size)
+            throws IOException
+    {
+        int sampleSize = (int) Math.min(size, COMPRESSION_SAMPLE_SIZE);
+        if (sampleSize == 0) {
+            return 0;
+        }
+        byte[] sample;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            sample = ZipDirectory.readFully(channel, 0, sampleSize).array();
+        }
+        Deflater deflater = new Deflater(compressionLevel, true);
         try {
-            return repositorySystem.resolveDependencies(repositorySession, dependencyRequest)
-                    .getArtifactResults()
-                    .stream()
-                    .map(ArtifactResult::getArtifact)
-                    .collect(toList());
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[sampleSize + 1024];
+            long compressedSize = 0;
+            while (!deflater.finished()) {
+                compressedSize += deflater.deflate(buffer);
+            }
+            return (sampleSize - compressedSize) * 100 / sampleSize;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private void explode(String prefix, List<Entry<String, Path>> bundleEntries, BuildMetrics metrics)
+            throws MojoExecutionException
+    {
+        Path pluginDirectory = explodedDirectory.toPath().resolve(prefix);
+        Optional<PluginBundleIndex.Builder> index = indexPackages || indexClasses ? Optional.of(new PluginBundleIndex.Builder(indexClasses)) : Optional.empty();
+        ExplodedBundle exploded = new ExplodedBundle(pluginDirectory);
+        try (Phase ignored = metrics.phase("exploded")) {
+            for (Entry<String, Path> file : bundleEntries) {
+                indexJar(index, prefix, file, metrics);
+                exploded.addFile(file.getKey().substring(prefix.length()), file.getValue());
+            }
+            if (index.isPresent()) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                index.orElseThrow().build().write(content);
+                exploded.addBytes(PluginBundleIndex.ENTRY_NAME, content.toByteArray());
+            }
+            exploded.removeOthers();
         }
-        catch (DependencyResolutionException e) {
-            throw new MojoExecutionException("Failed to resolve runtime dependencies.", e);
+        catch (IOException e) {
+            throw new MojoExecutionException("Failed to lay out plugin in %s.".formatted(pluginDirectory), e);
         }
+        metrics.count("explodedLinked", exploded.linked());
+        metrics.count("explodedCopied", exploded.copied());
+        metrics.count("explodedUnchanged", exploded.unchanged());
+        metrics.count("explodedRemoved", exploded.removed());
+        if (getLog().isInfoEnabled()) {
+            getLog().info("Laid out Trino plugin in %s: %s linked, %s copied, %s unchanged, %s removed"
+                    .formatted(pluginDirectory, exploded.linked(), exploded.copied(), exploded.unchanged(), exploded.removed()));
+        }
+    }
+
+    private static Optional<ZipDirectory.Entry> previousEntry(Optional<PreviousBundle> previousBundle, String entryName)
+    {
+        return previousBundle.map(previous -> previous.entries().get(entryName));
     }
 
     /**
-     * Builds the entry header. A {@code DEFLATED} entry needs nothing up front, because {@link ZipOutputStream} sizes
-     * and checksums it while the data streams through. A {@code STORED} entry does: the zip format requires its size
-     * and CRC before its data is written, so the file is streamed once here to checksum it and once again by the caller
-     * to copy it. Streaming twice keeps memory flat no matter how large the bundle is.
+     * Copies the entry from the previous bundle if it holds the file as it is now, and returns whether it did.
      */
-    private ZipEntry bundleEntry(String entryName, Path file, Optional<FileTime> fileTime)
+    private static boolean copyPreviousEntry(PluginBundleWriter bundle, Optional<PreviousBundle> previousBundle, String entryName, BuildMetrics metrics)
             throws IOException
     {
-        ZipEntry entry = new ZipEntry(entryName);
-        fileTime.ifPresent(entry::setLastModifiedTime);
-        if (compress) {
-            entry.setMethod(ZipEntry.DEFLATED);
-            return entry;
-        }
-        long fileSize = size(file);
-        entry.setMethod(ZipEntry.STORED);
-        entry.setSize(fileSize);
-        entry.setCompressedSize(fileSize);
-        entry.setCrc(checksum(file));
-        return entry;
+        Optional<ZipDirectory.Entry> entry = previousEntry(previousBundle, entryName);
+        if (entry.isEmpty()) {
+            return false;
+        }
+        try (Phase ignored = metrics.phase("zipWriting")) {
+            bundle.copyEntry(previousBundle.orElseThrow().channel(), entry.orElseThrow());
+        }
+        metrics.count("entries", 1);
+        metrics.count("entriesReused", 1);
+        return true;
+    }
+
+    private static void indexJar(Optional<PluginBundleIndex.Builder> index, String prefix, Entry<String, Path> file, BuildMetrics metrics)
+            throws IOException
+    {
+        if (index.isPresent() && file.getKey().endsWith(".jar")) {
+            try (Phase ignored = metrics.phase("index");
+                    FileChannel channel = FileChannel.open(file.getValue(), READ)) {
+                index.orElseThrow().addJar(file.getKey().substring(prefix.length()), ZipDirectory.read(channel));
+            }
+        }
+    }
+
+    private byte[] indexContent(PluginBundleIndex index)
+            throws IOException
+    {
+        for (String splitPackage : index.splitPackages()) {
+            getLog().info("Split package %s in %s".formatted(splitPackage, join(", ", index.jarsForPackage(splitPackage))));
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        index.write(content);
+        return content.toByteArray();
+    }
+
+    private ChecksumCache checksumCache()
+    {
+        Path localRepository = repositorySession().getLocalRepository().getBasedir().toPath();
+        Path directory = checksumCacheDirectory != null
+                ? checksumCacheDirectory.toPath()
+                : localRepository.resolve(".cache").resolve("trino-maven-plugin").resolve("checksums");
+        return new ChecksumCache(directory, localRepository);
+    }
+
+    private record StoredFile(BasicFileAttributes attributes, OptionalLong crc) {}
+
+    /**
+     * Returns the attributes of the file along with its checksum if the cache holds one for this version of the file.
+     * Otherwise, the checksum is computed and cached if requested, or left for the bundle writer to compute while it
+     * copies the file.
+     */
+    private StoredFile storedFile(Path file, Optional<ChecksumCache> checksums, boolean computeChecksum, BuildMetrics metrics)
+            throws IOException
+    {
+        BasicFileAttributes attributes = readAttributes(file, BasicFileAttributes.class);
+        if (checksums.isPresent() && checksums.orElseThrow().isCached(file)) {
+            try {
+                OptionalLong cached = checksums.orElseThrow().get(file, attributes);
+                if (cached.isPresent()) {
+                    metrics.count("checksumCacheHits", 1);
+                    return new StoredFile(attributes, cached);
+                }
+            }
+            catch (IOException e) {
+                getLog().debug("Ignoring unreadable checksum cache entry for " + file, e);
+            }
+            metrics.count("checksumCacheMisses", 1);
+        }
+        if (!computeChecksum) {
+            return new StoredFile(attributes, OptionalLong.empty());
+        }
+        long crc = checksum(file, metrics);
+        cacheChecksum(file, attributes, crc, checksums);
+        return new StoredFile(attributes, OptionalLong.of(crc));
+    }
+
+    /**
+     * Records the checksum if the file is cached. The cache only speeds up the build, so failing to update it is not an
+     * error.
+     */
+    private void cacheChecksum(Path file, BasicFileAttributes attributes, long crc, Optional<ChecksumCache> checksums)
+    {
+        if (checksums.isEmpty() || !checksums.orElseThrow().isCached(file)) {
+            return;
+        }
+        try {
+            checksums.orElseThrow().put(file, attributes, crc);
+        }
+        catch (IOException e) {
+            getLog().debug("Failed to cache checksum of " + file, e);
+        }
     }
 
-    private static long checksum(Path file)
+    static long checksum(Path file, BuildMetrics metrics)
             throws IOException
     {
-        try (CheckedInputStream in = new CheckedInputStream(newInputStream(file), new CRC32())) {
+        try (CheckedInputStream in = new CheckedInputStream(metrics.counting(newInputStream(file), "bytesRead"), new CRC32())) {
             in.transferTo(nullOutputStream());
             return in.getChecksum().getValue();
         }
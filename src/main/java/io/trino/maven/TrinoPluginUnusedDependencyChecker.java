@@ -0,0 +1,125 @@
+package io.trino.maven;
+
+import io.trino.maven.BuildMetrics.Phase;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import static io.trino.maven.Utils.artifactName;
+import static java.util.Map.entry;
+
+/**
+ * Reports the runtime dependencies the plugin would bundle that none of its classes can reach, see
+ * {@link DependencyReachability}. Not bound to the lifecycle: run it on demand, or bind it in the build of the plugin.
+ */
+@Mojo(name = "check-unused-dependencies",
+        defaultPhase = LifecyclePhase.VERIFY,
+        requiresDependencyResolution = ResolutionScope.RUNTIME,
+        threadSafe = true)
+public class TrinoPluginUnusedDependencyChecker
+        extends BaseTrinoPluginMojo
+{
+    @Parameter(property = "trino.plugin.skipCheckUnusedDependencies", defaultValue = "false")
+    private boolean skipCheckUnusedDependencies;
+
+    /**
+     * Whether to fail the build when a dependency is unused, rather than only warning about it. The build does not fail
+     * if a reachable class could not be read, as the dependencies it uses are unknown.
+     */
+    @Parameter(property = "trino.plugin.failOnUnusedDependencies", defaultValue = "false")
+    private boolean failOnUnusedDependencies;
+
+    /**
+     * Dependencies, as {@code groupId:artifactId}, that are not reported even if unused, such as those the plugin only
+     * loads by name.
+     */
+    @Parameter
+    private final Set<String> ignoredUnusedDependencies = new HashSet<>();
+
+    /**
+     * Number of threads that read the dependency jars. By default, {@code 0}, one per available processor.
+     */
+    @Parameter(property = "trino.plugin.analysisThreads", defaultValue = "0")
+    private int analysisThreads;
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", readonly = true)
+    private File classesDirectory;
+
+    @Parameter(defaultValue = "${project.build.directory}/trino-plugin/unused-dependencies.txt")
+    private String unusedDependenciesReport;
+
+    @Override
+    public void execute()
+            throws MojoExecutionException
+    {
+        if (skipCheckUnusedDependencies) {
+            getLog().info("Skipping unused dependency checks");
+            return;
+        }
+        if (analysisThreads < 0) {
+            throw new MojoExecutionException("Analysis thread count must not be negative, but was %s.".formatted(analysisThreads));
+        }
+
+        BuildMetrics metrics = BuildMetrics.start(session, "check-unused-dependencies");
+        try {
+            List<Entry<String, Path>> dependencies = new ArrayList<>();
+            try (Phase ignored = metrics.phase("resolution")) {
+                for (org.eclipse.aether.artifact.Artifact artifact : resolveRuntimeScopeTransitively(metrics)) {
+                    if ("pom".equals(artifact.getExtension()) || artifact.getFile() == null || !artifact.getFile().isFile()) {
+                        continue;
+                    }
+                    dependencies.add(entry(artifactName(artifact), artifact.getFile().toPath()));
+                }
+            }
+
+            DependencyReachability reachability;
+            try (Phase ignored = metrics.phase("analysis")) {
+                int threads = analysisThreads == 0 ? Runtime.getRuntime().availableProcessors() : analysisThreads;
+                reachability = DependencyReachability.analyze(classesDirectory.toPath(), dependencies, threads);
+                reachability.writeReport(Path.of(unusedDependenciesReport));
+            }
+            catch (IOException e) {
+                throw new MojoExecutionException("Failed to analyze the plugin dependencies.", e);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while analyzing the plugin dependencies", e);
+            }
+            metrics.count("dependenciesAnalyzed", dependencies.size());
+
+            List<String> unused = reachability.unusedDependencies().stream()
+                    .filter(dependency -> !ignoredUnusedDependencies.contains(dependency))
+                    .toList();
+            metrics.count("unusedDependencies", unused.size());
+            for (String dependency : unused) {
+                getLog().warn("Trino plugin dependency %s is unused. None of its classes is reachable from the plugin.".formatted(dependency));
+            }
+            if (!unused.isEmpty() && !reachability.reflectiveClasses().isEmpty()) {
+                getLog().warn("%s reachable classes load classes by name, such as %s, and may use dependencies reported as unused; see %s"
+                        .formatted(reachability.reflectiveClasses().size(), reachability.reflectiveClasses().keySet().iterator().next(), unusedDependenciesReport));
+            }
+            if (!reachability.unreadableClasses().isEmpty()) {
+                getLog().warn("%s reachable classes could not be read, such as %s, so the unused dependencies are not known for certain; see %s"
+                        .formatted(reachability.unreadableClasses().size(), reachability.unreadableClasses().keySet().iterator().next(), unusedDependenciesReport));
+                return;
+            }
+            if (failOnUnusedDependencies && !unused.isEmpty()) {
+                throw new MojoExecutionException("Trino plugin has %s unused dependencies: %s".formatted(unused.size(), String.join(", ", unused)));
+            }
+        }
+        finally {
+            metrics.finish();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package io.trino.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads the central directory of a zip file straight from a channel, recording where the data of each entry lives.
+ * Entries can then be read by position, without a {@link java.util.zip.ZipFile} holding the archive, and its own copy
+ * of the central directory, open in between.
+ */
+final class ZipDirectory
+{
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private ZipDirectory() {}
+
+    record Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset)
+    {
+        Entry
+        {
+            requireNonNull(name, "name is null");
+        }
+
+        boolean isDirectory()
+        {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Returns the entries of the archive in central directory order.
+     */
+    static List<Entry> read(FileChannel channel)
+            throws IOException
+    {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+
+        // The end record is followed by a comment of unknown length, so search for it backwards
+        int end = -1;
+        for (int position = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+                end = position;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        int locator = end - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+        if ((directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC)
+                && locator >= 0
+                && tail.getInt(locator) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+            ByteBuffer zip64End = readFully(channel, tail.getLong(locator + 8), ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+            if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new ZipException("Invalid ZIP64 end of central directory");
+            }
+            directorySize = zip64End.getLong(40);
+            directoryOffset = zip64End.getLong(48);
+        }
+        if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > fileSize) {
+            throw new ZipException("Invalid central directory");
+        }
+
+        // The entry count is not used, as some writers store it modulo 65536; the directory size is authoritative
+        ByteBuffer directory = readFully(channel, directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        while (position + CENTRAL_DIRECTORY_HEADER_SIZE <= directorySize) {
+            if (directory.getInt(position) != CENTRAL_DIRECTORY_HEADER) {
+                throw new ZipException("Invalid central directory header at offset " + (directoryOffset + position));
+            }
+            int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long size = Integer.toUnsignedLong(directory.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+            int nameStart = position + CENTRAL_DIRECTORY_HEADER_SIZE;
+            byte[] name = new byte[nameLength];
+            directory.get(nameStart, name);
+
+            // The ZIP64 extra field holds, in this order, exactly those values that did not fit their 32-bit field
+            int extra = nameStart + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = Short.toUnsignedInt(directory.getShort(extra));
+                int length = Short.toUnsignedInt(directory.getShort(extra + 2));
+                if (id == ZIP64_EXTRA_FIELD) {
+                    int value = extra + 4;
+                    if (size == ZIP64_MAGIC) {
+                        size = directory.getLong(value);
+                        value += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = directory.getLong(value);
+                        value += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC) {
+                        localHeaderOffset = directory.getLong(value);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            entries.add(new Entry(new String(name, UTF_8), method, crc, compressedSize, size, localHeaderOffset));
+            position = extraEnd + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the position of the entry's data, which follows its local header. The local header repeats the name but
+     * may carry a different extra field than the central directory, so its lengths have to be read.
+     */
+    static long dataOffset(FileChannel channel, Entry entry)
+            throws IOException
+    {
+        ByteBuffer header = readFully(channel, entry.localHeaderOffset(), LOCAL_FILE_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_FILE_HEADER) {
+            throw new ZipException("Invalid local header for " + entry.name());
+        }
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        return entry.localHeaderOffset() + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * Opens the uncompressed content of an entry. The stream reads by position, so it neither moves nor depends on the
+     * position of the channel, and closing it leaves the channel open.
+     */
+    static InputStream openEntry(FileChannel channel, Entry entry)
+            throws IOException
+    {
+        InputStream data = new ChannelInputStream(channel, dataOffset(channel, entry), entry.compressedSize());
+        return switch (entry.method()) {
+            case STORED -> data;
+            case DEFLATED -> {
+                Inflater inflater = new Inflater(true);
+                // A raw inflater may need one byte past the end of the compressed data to detect its end
+                yield new InflaterInputStream(new SequenceInputStream(data, new ByteArrayInputStream(new byte[1])), inflater, 4096)
+                {
+                    @Override
+                    public void close()
+                            throws IOException
+                    {
+                        try {
+                            super.close();
+                        }
+                        finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            }
+            default -> throw new ZipException("Unsupported compression method %s for %s".formatted(entry.method(), entry.name()));
+        };
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int length)
+            throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of zip file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static final class ChannelInputStream
+            extends InputStream
+    {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        private ChannelInputStream(FileChannel channel, long position, long length)
+        {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            byte[] buffer = new byte[1];
+            return read(buffer, 0, 1) < 0 ? -1 : buffer[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            if (position >= end) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, end - position)), position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of zip file");
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
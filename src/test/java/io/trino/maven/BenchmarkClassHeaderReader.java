@@ -0,0 +1,86 @@
+package io.trino.maven;
+
+import io.trino.maven.ClassHeaderReader.ReferenceFilter;
+import io.trino.maven.SyntheticClasses.Hierarchy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.Files.createTempDirectory;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Reading the class headers of the local classes, which generate-service-descriptor does for every class file that
+ * changed, with and without the reference prefilter built from the local class names and the services.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BenchmarkClassHeaderReader
+{
+    @Param({"1000", "10000", "100000"})
+    private int classes;
+
+    private List<byte[]> classFiles;
+    private ReferenceFilter referenceFilter;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        Path directory = createTempDirectory("benchmark-class-header-reader");
+        try {
+            Hierarchy hierarchy = SyntheticClasses.hierarchy(directory, classes, 0, 0, 0, 4, 42);
+            classFiles = List.copyOf(hierarchy.localClasses().values());
+            List<String> names = new ArrayList<>(hierarchy.services());
+            names.addAll(hierarchy.localClasses().keySet());
+            referenceFilter = new ReferenceFilter(names);
+        }
+        finally {
+            TestingBuilds.deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    public void readHeaders(Blackhole blackhole)
+            throws IOException
+    {
+        for (byte[] classFile : classFiles) {
+            blackhole.consume(ClassHeaderReader.read(new ByteArrayInputStream(classFile)));
+        }
+    }
+
+    @Benchmark
+    public void readHeadersWithReferenceFilter(Blackhole blackhole)
+            throws IOException
+    {
+        for (byte[] classFile : classFiles) {
+            blackhole.consume(ClassHeaderReader.read(new ByteArrayInputStream(classFile), referenceFilter));
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Benchmarks.run(BenchmarkClassHeaderReader.class);
+    }
+}
@@ -0,0 +1,52 @@
+package io.trino.maven;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Naming the bundle entries of dependencies, over names that fit, names whose groupId is abbreviated and names that are
+ * abbreviated as a whole.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BenchmarkGroupAwareFileName
+{
+    private final List<String[]> names = List.of(
+            new String[] {"io.airlift", "units-1.10.jar"},
+            new String[] {"com.google.guava", "guava-33.4.8-jre.jar"},
+            new String[] {"com.fasterxml.jackson.datatype", "jackson-datatype-jdk8-2.18.2.jar"},
+            new String[] {"org.apache.hadoop.thirdparty", "hadoop-shaded-protobuf_3_25-1.3.0.jar"},
+            new String[] {"software.amazon.awssdk", "third-party-jackson-dataformat-cbor-2.30.7.jar"},
+            new String[] {"io.opentelemetry.instrumentation", "opentelemetry-instrumentation-api-incubator-2.12.0-alpha.jar"});
+
+    @Benchmark
+    public void groupAwareFileName(Blackhole blackhole)
+    {
+        for (String[] name : names) {
+            blackhole.consume(Utils.groupAwareFileName(name[0], name[1]));
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Benchmarks.run(BenchmarkGroupAwareFileName.class);
+    }
+}
@@ -0,0 +1,87 @@
+package io.trino.maven;
+
+import io.trino.maven.ClassHierarchyIndex.ClassFile;
+import io.trino.maven.SyntheticClasses.Hierarchy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.write;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Reading the class headers of the local classes from the output directory, as generate-service-descriptor does on a
+ * build without an index, on one thread and on several. The class files are in the page cache after the first
+ * iteration, so this measures the cost of the reads themselves rather than that of waiting on storage.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BenchmarkLocalClassScan
+{
+    @Param({"10000", "100000"})
+    private int classes;
+
+    @Param({"1", "4", "16"})
+    private int threads;
+
+    private Path directory;
+    private List<ClassFile> classFiles;
+    private BuildMetrics metrics;
+
+    @Setup
+    public void setup()
+            throws Exception
+    {
+        directory = createTempDirectory("benchmark-local-class-scan");
+        Hierarchy hierarchy = SyntheticClasses.hierarchy(directory, classes, 0, 0, 0, 4, 42);
+        Path classesDirectory = directory.resolve("classes");
+        for (Entry<String, byte[]> localClass : hierarchy.localClasses().entrySet()) {
+            Path file = classesDirectory.resolve(localClass.getKey() + ".class");
+            createDirectories(file.getParent());
+            write(file, localClass.getValue());
+        }
+        classFiles = ServiceDescriptorGenerator.listClassFiles(classesDirectory);
+        metrics = TestingBuilds.metrics();
+    }
+
+    @TearDown
+    public void tearDown()
+            throws Exception
+    {
+        TestingBuilds.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<ClassInfo> readLocalClasses()
+            throws Exception
+    {
+        return ServiceDescriptorGenerator.readLocalClasses(directory.resolve("classes"), classFiles, threads, Optional.empty(), metrics);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Benchmarks.run(BenchmarkLocalClassScan.class);
+    }
+}
@@ -0,0 +1,129 @@
+package io.trino.maven;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
+
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.size;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Writing plugin bundles of synthetic dependency jars, as package-trino-plugin does without its caches: stored, where
+ * each jar is checksummed while it is copied, and deflated, with the default level, threads and memory. The checksum
+ * of the jars, which a stored bundle needs before each entry unless the checksum cache has it, is measured on its own.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BenchmarkPluginBundleWriter
+{
+    private static final int CLASSES_PER_JAR = 250;
+    private static final int COMPRESSION_LEVEL = 6;
+    private static final long COMPRESSION_MEMORY = 256L * 1024 * 1024;
+
+    public enum Compression
+    {
+        STORED,
+        DEFLATED,
+    }
+
+    @Param({"10", "100", "300"})
+    private int jars;
+
+    @Param
+    private Compression compression;
+
+    private Path directory;
+    private Path bundle;
+    private List<Path> files;
+    private BuildMetrics metrics;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        directory = createTempDirectory("benchmark-plugin-bundle-writer");
+        bundle = directory.resolve("bundle.zip");
+        files = new ArrayList<>();
+        for (int jar = 0; jar < jars; jar++) {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (int i = 0; i < CLASSES_PER_JAR; i++) {
+                String name = "dependency%s/package%s/Class%s".formatted(jar, i % 10, i);
+                classes.put(name, SyntheticClasses.classFile(name, false, "java/lang/Object"));
+            }
+            Path file = directory.resolve("dependency-" + jar + ".jar");
+            SyntheticClasses.writeJar(file, classes);
+            files.add(file);
+        }
+        metrics = TestingBuilds.metrics();
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        TestingBuilds.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long writeBundle()
+            throws IOException, ExecutionException, InterruptedException
+    {
+        try (PluginBundleWriter writer = new PluginBundleWriter(bundle, Optional.empty())) {
+            if (compression == Compression.STORED) {
+                for (Path file : files) {
+                    writer.addFile("plugin/" + file.getFileName(), file, size(file), OptionalLong.empty());
+                }
+            }
+            else {
+                try (ParallelDeflater deflater = new ParallelDeflater(writer, Runtime.getRuntime().availableProcessors(), COMPRESSION_LEVEL, COMPRESSION_MEMORY, metrics)) {
+                    for (Path file : files) {
+                        deflater.addFile("plugin/" + file.getFileName(), file, size(file));
+                    }
+                    deflater.finish();
+                }
+            }
+        }
+        return size(bundle);
+    }
+
+    @Benchmark
+    public void checksum(Blackhole blackhole)
+            throws IOException
+    {
+        for (Path file : files) {
+            blackhole.consume(TrinoPluginPackager.checksum(file, metrics));
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Benchmarks.run(BenchmarkPluginBundleWriter.class);
+    }
+}
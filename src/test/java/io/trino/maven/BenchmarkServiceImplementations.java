@@ -0,0 +1,126 @@
+package io.trino.maven;
+
+import io.trino.maven.SyntheticClasses.Hierarchy;
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import static io.trino.maven.Service.Cardinality.MANY;
+import static java.nio.file.Files.createTempDirectory;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Finding the implementations of the services among the local classes, which resolves the ancestors of every local
+ * class, reading those in dependency jars on demand: with a cold dependency class cache, as in the first module of a
+ * build, and with a warm one, as in the modules after it.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BenchmarkServiceImplementations
+{
+    private static final int DEPTH = 8;
+    private static final int FILLER_CLASSES = 100;
+    private static final int SERVICES = 4;
+    // The default of maxOpenArchives
+    private static final int MAX_OPEN_ARCHIVES = 16;
+
+    @Param({"1000", "10000", "100000"})
+    private int classes;
+
+    @Param({"10", "100", "500"})
+    private int dependencies;
+
+    private Path directory;
+    private List<Service> services;
+    private Set<String> localClasses;
+    private Map<String, ClassInfo> localClassInfos;
+    private List<Artifact> artifacts;
+    private BuildMetrics metrics;
+    private DependencyClassCache warmCache;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        directory = createTempDirectory("benchmark-service-implementations");
+        Hierarchy hierarchy = SyntheticClasses.hierarchy(directory, classes, dependencies, DEPTH, FILLER_CLASSES, SERVICES, 42);
+        services = hierarchy.services().stream()
+                .map(name -> new Service(name.replace('/', '.'), MANY))
+                .toList();
+        localClassInfos = new HashMap<>();
+        for (Entry<String, byte[]> localClass : hierarchy.localClasses().entrySet()) {
+            localClassInfos.put(localClass.getKey(), ClassHeaderReader.read(new ByteArrayInputStream(localClass.getValue())));
+        }
+        localClasses = Set.copyOf(localClassInfos.keySet());
+        artifacts = hierarchy.dependencyJars().stream()
+                .map(TestingBuilds::jarArtifact)
+                .toList();
+        metrics = TestingBuilds.metrics();
+        warmCache = new DependencyClassCache();
+        warmCache.setMaximumWeight(1L << 30);
+        findImplementations(warmCache);
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        TestingBuilds.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Map<Service, List<String>> findImplementationsColdCache()
+            throws IOException
+    {
+        DependencyClassCache cache = new DependencyClassCache();
+        cache.setMaximumWeight(0);
+        return findImplementations(cache);
+    }
+
+    @Benchmark
+    public Map<Service, List<String>> findImplementationsWarmCache()
+            throws IOException
+    {
+        return findImplementations(warmCache);
+    }
+
+    private Map<Service, List<String>> findImplementations(DependencyClassCache cache)
+            throws IOException
+    {
+        // The map of class headers is completed with the dependency classes, so each run starts from the local ones
+        Map<String, ClassInfo> classInfos = new HashMap<>(localClassInfos);
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, MAX_OPEN_ARCHIVES, metrics)) {
+            return ServiceDescriptorGenerator.findConcreteImplementations(services, localClasses, classInfos, resolver);
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Benchmarks.run(BenchmarkServiceImplementations.class);
+    }
+}
@@ -0,0 +1,26 @@
+package io.trino.maven;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Shared setup of the JMH benchmarks. Every benchmark class has a {@code main} method that runs its benchmarks with the
+ * allocation profiler, so that the bytes allocated per operation are reported next to the time.
+ */
+final class Benchmarks
+{
+    private Benchmarks() {}
+
+    static void run(Class<?> benchmarkClass)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include("^\\Q" + benchmarkClass.getName() + ".\\E")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,175 @@
+package io.trino.maven;
+
+import io.trino.maven.SyntheticClasses.Hierarchy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.write;
+import static java.nio.file.Files.writeString;
+
+/**
+ * Generates a plugin project large enough for scaling problems to show: tens of thousands of classes in deep
+ * hierarchies, extending the classes of hundreds of dependencies. The dependencies and a stand-in for the SPI are
+ * served from a file repository in the project directory, so no remote repository is needed for them. The classes are
+ * written as class files straight into the output directory, and the build skips compiling, so that the build time is
+ * that of the plugin goals.
+ * <p>
+ * The dependencies form a tree: the project declares the root and every tenth dependency, and each dependency depends
+ * on the next two in breadth-first order, so resolving them walks a graph as deep as a real plugin's.
+ */
+final class LargePluginFixture
+{
+    static final String GROUP_ID = "io.trino.fixture";
+    static final String ARTIFACT_ID = "large-plugin";
+    static final String VERSION = "1.0";
+    static final String PLUGIN_CLASS = "fixture.FixturePlugin";
+
+    private static final String SPI_ARTIFACT_ID = "fixture-spi";
+    private static final int SERVICES = 4;
+    private static final long SEED = 2013;
+
+    private LargePluginFixture() {}
+
+    static void generate(Path basedir, int classes, int dependencies, int depth, int fillerClasses)
+            throws IOException
+    {
+        Path repository = basedir.resolve("repository");
+        Path scratch = basedir.resolve("scratch");
+        Hierarchy hierarchy = SyntheticClasses.hierarchy(scratch, classes, dependencies, depth, fillerClasses, SERVICES, SEED);
+
+        Map<String, byte[]> spiClasses = new LinkedHashMap<>();
+        spiClasses.put("io/trino/spi/Plugin", SyntheticClasses.interfaceFile("io/trino/spi/Plugin"));
+        for (String service : hierarchy.services()) {
+            spiClasses.put(service, SyntheticClasses.interfaceFile(service));
+        }
+        SyntheticClasses.writeJar(artifactFile(repository, SPI_ARTIFACT_ID, "jar"), spiClasses);
+        writeString(artifactFile(repository, SPI_ARTIFACT_ID, "pom"), pom(SPI_ARTIFACT_ID, "jar", List.of(), ""), UTF_8);
+
+        // The first jar of the hierarchy holds the services, which the SPI stand-in replaces
+        List<Path> jars = hierarchy.dependencyJars().subList(1, hierarchy.dependencyJars().size());
+        for (int i = 0; i < jars.size(); i++) {
+            String artifactId = dependencyArtifactId(i);
+            move(jars.get(i), artifactFile(repository, artifactId, "jar"));
+            List<String> children = new ArrayList<>();
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < jars.size(); child++) {
+                children.add(dependency(dependencyArtifactId(child), "compile"));
+            }
+            writeString(artifactFile(repository, artifactId, "pom"), pom(artifactId, "jar", children, ""), UTF_8);
+        }
+        TestingBuilds.deleteRecursively(scratch);
+
+        Path classesDirectory = basedir.resolve("target/classes");
+        for (Entry<String, byte[]> localClass : hierarchy.localClasses().entrySet()) {
+            writeClass(classesDirectory, localClass.getKey(), localClass.getValue());
+        }
+        String pluginClass = PLUGIN_CLASS.replace('.', '/');
+        writeClass(classesDirectory, pluginClass, SyntheticClasses.classFile(pluginClass, false, "java/lang/Object", "io/trino/spi/Plugin"));
+
+        List<String> projectDependencies = new ArrayList<>();
+        projectDependencies.add(dependency(SPI_ARTIFACT_ID, "provided"));
+        for (int i = 0; i < jars.size(); i += 10) {
+            projectDependencies.add(dependency(dependencyArtifactId(i), "compile"));
+        }
+        StringBuilder services = new StringBuilder();
+        for (String service : hierarchy.services()) {
+            services.append("""
+                    <service>
+                        <className>%s</className>
+                        <cardinality>MANY</cardinality>
+                    </service>
+                    """.formatted(service.replace('/', '.')).indent(24));
+        }
+        String build = """
+                    <properties>
+                        <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>
+                        <!-- the classes are generated into the output directory -->
+                        <maven.main.skip>true</maven.main.skip>
+                    </properties>
+
+                    <repositories>
+                        <repository>
+                            <id>fixture</id>
+                            <url>%s</url>
+                        </repository>
+                    </repositories>
+
+                    <build>
+                        <plugins>
+                            <plugin>
+                                <groupId>io.trino</groupId>
+                                <artifactId>trino-maven-plugin</artifactId>
+                                <version>${it-plugin.version}</version>
+                                <extensions>true</extensions>
+                                <configuration>
+                                    <spiGroupId>%s</spiGroupId>
+                                    <spiArtifactId>%s</spiArtifactId>
+                                    <additionalServices>
+                %s                    </additionalServices>
+                                </configuration>
+                            </plugin>
+                        </plugins>
+                    </build>
+                """.formatted(repository.toUri(), GROUP_ID, SPI_ARTIFACT_ID, services);
+        writeString(basedir.resolve("pom.xml"), pom(ARTIFACT_ID, "trino-plugin", projectDependencies, build), UTF_8);
+    }
+
+    private static String dependencyArtifactId(int index)
+    {
+        return "dependency-" + index;
+    }
+
+    private static Path artifactFile(Path repository, String artifactId, String extension)
+            throws IOException
+    {
+        Path directory = repository.resolve(GROUP_ID.replace('.', '/')).resolve(artifactId).resolve(VERSION);
+        createDirectories(directory);
+        return directory.resolve("%s-%s.%s".formatted(artifactId, VERSION, extension));
+    }
+
+    private static void writeClass(Path classesDirectory, String name, byte[] classFile)
+            throws IOException
+    {
+        Path file = classesDirectory.resolve(name + ".class");
+        createDirectories(file.getParent());
+        write(file, classFile);
+    }
+
+    private static String dependency(String artifactId, String scope)
+    {
+        return """
+                        <dependency>
+                            <groupId>%s</groupId>
+                            <artifactId>%s</artifactId>
+                            <version>%s</version>
+                            <scope>%s</scope>
+                        </dependency>
+                """.formatted(GROUP_ID, artifactId, VERSION, scope);
+    }
+
+    private static String pom(String artifactId, String packaging, List<String> dependencies, String build)
+    {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <project xmlns="http://maven.apache.org/POM/4.0.0" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd">
+                    <modelVersion>4.0.0</modelVersion>
+
+                    <groupId>%s</groupId>
+                    <artifactId>%s</artifactId>
+                    <version>%s</version>
+                    <packaging>%s</packaging>
+
+                    <dependencies>
+                %s    </dependencies>
+                %s</project>
+                """.formatted(GROUP_ID, artifactId, VERSION, packaging, String.join("", dependencies), build.isEmpty() ? "" : "\n" + build);
+    }
+}
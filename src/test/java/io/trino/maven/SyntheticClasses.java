@@ -0,0 +1,155 @@
+package io.trino.maven;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.newOutputStream;
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V17;
+
+/**
+ * Generates class files and jars of class hierarchies, as benchmark and test input that needs no compiler and no
+ * repository.
+ */
+final class SyntheticClasses
+{
+    private SyntheticClasses() {}
+
+    /**
+     * Returns a public class with a constructor and a few methods, so that its constant pool and size resemble those of
+     * a small hand-written class.
+     */
+    static byte[] classFile(String name, boolean isAbstract, String superName, String... interfaces)
+    {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V17, ACC_PUBLIC | ACC_SUPER | (isAbstract ? ACC_ABSTRACT : 0), name, null, superName, interfaces);
+        MethodVisitor constructor = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        for (int i = 0; i < 4; i++) {
+            MethodVisitor method = writer.visitMethod(ACC_PUBLIC, "describe" + i, "()Ljava/lang/String;", null, null);
+            method.visitCode();
+            method.visitLdcInsn(name + " method " + i);
+            method.visitInsn(ARETURN);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    static byte[] interfaceFile(String name, String... interfaces)
+    {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(V17, ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT, name, null, "java/lang/Object", interfaces);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes the class files, keyed by internal name, to a jar in the given order.
+     */
+    static void writeJar(Path file, Map<String, byte[]> classFiles)
+            throws IOException
+    {
+        createDirectories(file.toAbsolutePath().getParent());
+        try (OutputStream out = newOutputStream(file);
+                JarOutputStream jar = new JarOutputStream(out)) {
+            for (Entry<String, byte[]> classFile : classFiles.entrySet()) {
+                jar.putNextEntry(new ZipEntry(classFile.getKey() + ".class"));
+                jar.write(classFile.getValue());
+                jar.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * A plugin-like hierarchy: the plugin classes extend the classes of its dependency jars, which implement the
+     * service interfaces through chains of base classes and interfaces.
+     */
+    record Hierarchy(List<String> services, Map<String, byte[]> localClasses, List<Path> dependencyJars) {}
+
+    /**
+     * Generates a hierarchy of the given size, writing the dependency jars to the directory. Every dependency holds a
+     * chain of base classes as deep as {@code depth}, whose root implements an interface of the dependency that extends
+     * one of the services, and {@code fillerClasses} classes outside the hierarchy. Of the local classes, one in eight is
+     * abstract and the others extend a base class of a dependency at a random depth, or directly implement a service.
+     */
+    static Hierarchy hierarchy(Path directory, int localClasses, int dependencies, int depth, int fillerClasses, int services, long seed)
+            throws IOException
+    {
+        Random random = new Random(seed);
+        List<String> serviceNames = new ArrayList<>();
+        Map<String, byte[]> serviceClasses = new LinkedHashMap<>();
+        for (int i = 0; i < services; i++) {
+            String name = "spi/Service" + i;
+            serviceNames.add(name);
+            serviceClasses.put(name, interfaceFile(name));
+        }
+        List<Path> jars = new ArrayList<>();
+        Path serviceJar = directory.resolve("spi.jar");
+        writeJar(serviceJar, serviceClasses);
+        jars.add(serviceJar);
+
+        List<String> baseClasses = new ArrayList<>();
+        for (int dependency = 0; dependency < dependencies; dependency++) {
+            String packageName = "dependency" + dependency + "/";
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            String api = packageName + "Api";
+            classes.put(api, interfaceFile(api, serviceNames.get(dependency % services)));
+            String superName = "java/lang/Object";
+            for (int level = 0; level < depth; level++) {
+                String name = packageName + "Base" + level;
+                classes.put(name, level == 0 ? classFile(name, true, superName, api) : classFile(name, true, superName));
+                baseClasses.add(name);
+                superName = name;
+            }
+            for (int i = 0; i < fillerClasses; i++) {
+                String name = packageName + "internal/Filler" + i;
+                classes.put(name, classFile(name, false, "java/lang/Object"));
+            }
+            Path jar = directory.resolve("dependency-" + dependency + ".jar");
+            writeJar(jar, classes);
+            jars.add(jar);
+        }
+
+        Map<String, byte[]> local = new LinkedHashMap<>();
+        for (int i = 0; i < localClasses; i++) {
+            String name = "plugin/package" + (i / 1000) + "/Local" + i;
+            if (i % 8 == 0) {
+                local.put(name, classFile(name, true, "java/lang/Object"));
+            }
+            else if (baseClasses.isEmpty() || i % 8 == 1) {
+                local.put(name, classFile(name, false, "java/lang/Object", serviceNames.get(random.nextInt(services))));
+            }
+            else {
+                local.put(name, classFile(name, false, baseClasses.get(random.nextInt(baseClasses.size()))));
+            }
+        }
+        return new Hierarchy(serviceNames, local, jars);
+    }
+}
@@ -8,6 +8,11 @@ import io.takari.maven.testing.executor.junit.MavenPluginTest;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import java.io.File;
+import java.nio.file.Path;
+
+import static java.nio.file.Files.readString;
+import static java.nio.file.Files.writeString;
+import static org.assertj.core.api.Assertions.assertThat;
 
 @MavenVersions("3.9.14")
 class TestCheckerIntegration
@@ -61,6 +66,62 @@ class TestCheckerIntegration
                 .assertLogText("Trino plugin dependency io.airlift:units must not have scope 'provided'.");
     }
 
+    @MavenPluginTest
+    void testInvalidCompileSpiDependency()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("invalid-compile-spi-dependency");
+        maven.forProject(basedir)
+                .execute("verify")
+                .assertLogText("Trino plugin dependency com.fasterxml.jackson.core:jackson-annotations must have scope 'provided'.");
+    }
+
+    @MavenPluginTest
+    void testSpiCheckIsCached()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("basic");
+        Path spiCacheDirectory = basedir.toPath().resolve("spi-cache");
+        maven.forProject(basedir)
+                .withCliOptions("-Dtrino.plugin.spiCache=true", "-Dtrino.plugin.spiCacheDirectory=" + spiCacheDirectory)
+                .execute("validate")
+                .assertErrorFreeLog();
+        assertThat(spiCacheDirectory.resolve("io.trino/trino-spi/351.spi")).isRegularFile();
+        assertThat(basedir.toPath().resolve("target/trino-plugin/spi-check.verdict")).isRegularFile();
+
+        // An unchanged module skips the checks
+        maven.forProject(basedir)
+                .withCliOptions("-Dtrino.plugin.spiCache=true", "-Dtrino.plugin.spiCacheDirectory=" + spiCacheDirectory, "-X")
+                .execute("validate")
+                .assertErrorFreeLog()
+                .assertLogText("Skipping SPI dependency checks, as the dependencies passed them before");
+    }
+
+    @MavenPluginTest
+    void testChangedScopeInvalidatesSpiCheck()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("invalid-extra");
+        Path spiCacheDirectory = basedir.toPath().resolve("spi-cache");
+        Path pom = basedir.toPath().resolve("pom.xml");
+        String invalidPom = readString(pom);
+        writeString(pom, invalidPom.replace(
+                "<version>1.13</version>\n            <scope>provided</scope>",
+                "<version>1.13</version>\n            <scope>compile</scope>"));
+        maven.forProject(basedir)
+                .withCliOptions("-Dtrino.plugin.spiCache=true", "-Dtrino.plugin.spiCacheDirectory=" + spiCacheDirectory)
+                .execute("validate")
+                .assertErrorFreeLog();
+
+        // The verdict was for the compile scope
+        writeString(pom, invalidPom);
+        maven.forProject(basedir)
+                .withCliOptions("-Dtrino.plugin.spiCache=true", "-Dtrino.plugin.spiCacheDirectory=" + spiCacheDirectory, "-X")
+                .execute("validate")
+                .assertNoLogText("Skipping SPI dependency checks, as the dependencies passed them before")
+                .assertLogText("Trino plugin dependency io.airlift:units must not have scope 'provided'.");
+    }
+
     @MavenPluginTest
     void testExcludedExtraProvided()
             throws Exception
@@ -0,0 +1,166 @@
+package io.trino.maven;
+
+import io.trino.maven.ClassHeaderReader.ReferenceFilter;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.walk;
+import static java.util.Collections.list;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestClassHeaderReader
+{
+    private static final Path JAVA_BASE = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("modules", "java.base");
+
+    @Test
+    void testLongAndDoubleConstants()
+            throws IOException
+    {
+        ClassInfo classInfo = assertMatchesAsm(classFile(Constants.class));
+        assertThat(classInfo.name).isEqualTo("io/trino/maven/TestClassHeaderReader$Constants");
+        assertThat(classInfo.interfaces).containsExactly("java/io/Serializable", "java/lang/Comparable");
+    }
+
+    @Test
+    void testJdkClasses()
+            throws IOException
+    {
+        // java.lang holds classes, interfaces, enums, records and annotations, and Long and Double pool 8-byte constants
+        List<Path> classFiles;
+        try (Stream<Path> files = walk(JAVA_BASE.resolve("java/lang"), 1)) {
+            classFiles = files.filter(file -> file.toString().endsWith(".class")).toList();
+        }
+        assertThat(classFiles).hasSizeGreaterThan(100);
+        for (Path classFile : classFiles) {
+            assertMatchesAsm(readAllBytes(classFile));
+        }
+    }
+
+    @Test
+    void testModuleInfo()
+            throws IOException
+    {
+        ClassInfo classInfo = assertMatchesAsm(readAllBytes(JAVA_BASE.resolve("module-info.class")));
+        assertThat(classInfo.name).isEqualTo("module-info");
+        assertThat(classInfo.superName).isNull();
+        assertThat(classInfo.interfaces).isEmpty();
+    }
+
+    @Test
+    void testMultiReleaseJar()
+            throws Exception
+    {
+        // plexus-utils carries classes for newer releases under META-INF/versions
+        Path jar = Path.of(IOUtil.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<String> versionedEntries = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            for (ZipEntry entry : list(zip.entries())) {
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                try (InputStream in = zip.getInputStream(entry)) {
+                    assertMatchesAsm(in.readAllBytes());
+                }
+                if (entry.getName().startsWith("META-INF/versions/")) {
+                    versionedEntries.add(entry.getName());
+                }
+            }
+        }
+        assertThat(versionedEntries).isNotEmpty();
+    }
+
+    @Test
+    void testReferenceFilter()
+            throws IOException
+    {
+        byte[] classFile = classFile(Constants.class);
+        assertThat(ClassHeaderReader.read(new ByteArrayInputStream(classFile), new ReferenceFilter(List.of("java/lang/Comparable"))))
+                .isNotNull();
+        assertThat(ClassHeaderReader.read(new ByteArrayInputStream(classFile), new ReferenceFilter(List.of("io/trino/spi/Plugin"))))
+                .isNull();
+        // The class itself does not count as a reference
+        assertThat(ClassHeaderReader.read(new ByteArrayInputStream(classFile), new ReferenceFilter(List.of("io/trino/maven/TestClassHeaderReader$Constants"))))
+                .isNull();
+    }
+
+    @Test
+    void testReferenceFilterKeepsSubclassesOfDependencyClasses()
+            throws IOException
+    {
+        ReferenceFilter referenceFilter = new ReferenceFilter(List.of("io/trino/spi/Plugin", "plugin/Local"));
+
+        // The base class may implement the plugin interface, which is only known once it is read
+        byte[] subclass = SyntheticClasses.classFile("plugin/ConnectorPlugin", false, "dependency/BasePlugin");
+        assertThat(ClassHeaderReader.read(new ByteArrayInputStream(subclass), referenceFilter).superName).isEqualTo("dependency/BasePlugin");
+        byte[] implementation = SyntheticClasses.classFile("plugin/Handle", false, "java/lang/Object", "dependency/ConnectorHandle");
+        assertThat(ClassHeaderReader.read(new ByteArrayInputStream(implementation), referenceFilter).interfaces).containsExactly("dependency/ConnectorHandle");
+
+        byte[] jdkSubclass = SyntheticClasses.classFile("plugin/Values", false, "java/util/AbstractList", "java/util/RandomAccess");
+        assertThat(ClassHeaderReader.read(new ByteArrayInputStream(jdkSubclass), referenceFilter)).isNull();
+        // Unless a name is a JDK class, which JDK supertypes may lead to
+        assertThat(ClassHeaderReader.read(new ByteArrayInputStream(jdkSubclass), new ReferenceFilter(List.of("java/util/Collection")))).isNotNull();
+    }
+
+    @Test
+    void testNotAClassFile()
+    {
+        assertThatThrownBy(() -> ClassHeaderReader.read(new ByteArrayInputStream(new byte[] {'P', 'K', 3, 4, 0, 0, 0, 0})))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Not a class file");
+    }
+
+    private static ClassInfo assertMatchesAsm(byte[] classFile)
+            throws IOException
+    {
+        ClassInfo classInfo = ClassHeaderReader.read(new ByteArrayInputStream(classFile));
+        ClassReader classReader = new ClassReader(classFile);
+        assertThat(classInfo.name).isEqualTo(classReader.getClassName());
+        assertThat(classInfo.access).as(classInfo.name).isEqualTo(classReader.getAccess());
+        assertThat(classInfo.superName).as(classInfo.name).isEqualTo(classReader.getSuperName());
+        assertThat(classInfo.interfaces).as(classInfo.name).containsExactly(classReader.getInterfaces());
+        return classInfo;
+    }
+
+    private static byte[] classFile(Class<?> clazz)
+            throws IOException
+    {
+        String resource = clazz.getName().substring(clazz.getPackageName().length() + 1) + ".class";
+        try (InputStream in = clazz.getResourceAsStream(resource)) {
+            assertThat(in).isNotNull();
+            return in.readAllBytes();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Constants
+            implements Serializable, Comparable<Constants>
+    {
+        private static final long LONG_VALUE = 0x0123_4567_89AB_CDEFL;
+        private static final double DOUBLE_VALUE = 2.718281828459045;
+        private static final String STRING_VALUE = "constant";
+
+        private long value;
+
+        @Override
+        public int compareTo(Constants other)
+        {
+            return Long.compare(value * LONG_VALUE, (long) (other.value * DOUBLE_VALUE)) + STRING_VALUE.length();
+        }
+    }
+}
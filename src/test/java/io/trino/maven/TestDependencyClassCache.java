@@ -0,0 +1,154 @@
+package io.trino.maven;
+
+import io.trino.maven.DependencyClassCache.Stats;
+import org.apache.maven.artifact.Artifact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestDependencyClassCache
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSharedByLaterResolutions()
+            throws IOException
+    {
+        List<Artifact> artifacts = List.of(writeJar("first.jar", "dependency/Base", "java/lang/Object"));
+        DependencyClassCache cache = new DependencyClassCache();
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency/Base").superName).isEqualTo("java/lang/Object");
+            assertThat(resolver.openedArchives()).isEqualTo(1);
+        }
+
+        // A later execution neither opens the jar nor reads the class again
+        Stats before = cache.stats();
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency/Base").superName).isEqualTo("java/lang/Object");
+            assertThat(resolver.openedArchives()).isZero();
+        }
+        Stats after = cache.stats();
+        assertThat(after.hits() - before.hits()).isEqualTo(2);
+        assertThat(after.misses()).isEqualTo(before.misses());
+        assertThat(after.jars()).isEqualTo(1);
+    }
+
+    @Test
+    void testRebuiltJarIsReadAgain()
+            throws IOException
+    {
+        DependencyClassCache cache = new DependencyClassCache();
+        List<Artifact> artifacts = List.of(writeJar("rebuilt.jar", "dependency/Base", "java/lang/Object"));
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency/Base").superName).isEqualTo("java/lang/Object");
+        }
+
+        Path jar = directory.resolve("rebuilt.jar");
+        FileTime lastModified = getLastModifiedTime(jar);
+        artifacts = List.of(writeJar("rebuilt.jar", "dependency/Base", "dependency/Root"));
+        setLastModifiedTime(jar, FileTime.fromMillis(lastModified.toMillis() + 1000));
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency/Base").superName).isEqualTo("dependency/Root");
+        }
+    }
+
+    @Test
+    void testEviction()
+            throws IOException
+    {
+        List<Artifact> artifacts = List.of(writeJar("first.jar", "first/Base", "java/lang/Object"), writeJar("second.jar", "second/Base", "java/lang/Object"));
+        DependencyClassCache cache = new DependencyClassCache();
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, 16, TestingBuilds.metrics())) {
+            resolver.resolve("first/Base");
+            resolver.resolve("second/Base");
+        }
+        assertThat(cache.stats().jars()).isEqualTo(2);
+
+        // A limit below the size of one jar drops them all, least recently used first
+        cache.setMaximumWeight(1);
+        Stats stats = cache.stats();
+        assertThat(stats.jars()).isZero();
+        assertThat(stats.weight()).isZero();
+        assertThat(stats.evictions()).isEqualTo(2);
+
+        // With caching disabled nothing is kept
+        cache.setMaximumWeight(0);
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("first/Base")).isNotNull();
+        }
+        assertThat(cache.stats().jars()).isZero();
+    }
+
+    @Test
+    void testConcurrentResolutions()
+            throws Exception
+    {
+        List<Artifact> artifacts = new ArrayList<>();
+        for (int jar = 0; jar < 8; jar++) {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            String superName = "java/lang/Object";
+            for (int level = 0; level < 50; level++) {
+                String name = "dependency%s/Base%s".formatted(jar, level);
+                classes.put(name, SyntheticClasses.classFile(name, true, superName));
+                superName = name;
+            }
+            artifacts.add(writeJar("dependency-" + jar + ".jar", classes));
+        }
+
+        DependencyClassCache cache = new DependencyClassCache();
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = newFixedThreadPool(8)) {
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, cache, 4, TestingBuilds.metrics())) {
+                        for (int jar = 0; jar < 8; jar++) {
+                            for (int level = 1; level < 50; level++) {
+                                assertThat(resolver.resolve("dependency%s/Base%s".formatted(jar, level)).superName)
+                                        .isEqualTo("dependency%s/Base%s".formatted(jar, level - 1));
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        Stats stats = cache.stats();
+        assertThat(stats.jars()).isEqualTo(8);
+        assertThat(stats.evictions()).isZero();
+        // Every thread looks up the class list of each jar and 49 classes in it
+        assertThat(stats.hits() + stats.misses()).isEqualTo(8 * 8 * 50);
+    }
+
+    private Artifact writeJar(String fileName, String className, String superName)
+            throws IOException
+    {
+        return writeJar(fileName, Map.of(className, SyntheticClasses.classFile(className, false, superName)));
+    }
+
+    private Artifact writeJar(String fileName, Map<String, byte[]> classes)
+            throws IOException
+    {
+        Path jar = directory.resolve(fileName);
+        SyntheticClasses.writeJar(jar, classes);
+        return TestingBuilds.jarArtifact(jar);
+    }
+}
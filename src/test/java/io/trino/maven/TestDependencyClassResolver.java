@@ -0,0 +1,130 @@
+package io.trino.maven;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.write;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestDependencyClassResolver
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFirstDependencyOnClasspathWins()
+            throws IOException
+    {
+        Path classes = directory.resolve("classes");
+        writeClass(classes, "dependency/Shared", "directory/Base");
+        List<Artifact> artifacts = List.of(
+                writeJar("first.jar", "dependency/Shared", "first/Base"),
+                directoryArtifact(classes),
+                writeJar("second.jar", "dependency/Shared", "second/Base"),
+                writeJar("third.jar", "dependency/Other", "third/Base"));
+
+        // Directories come before jars, and jars keep their classpath order
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, new DependencyClassCache(), 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency/Shared").superName).isEqualTo("directory/Base");
+            assertThat(resolver.resolve("dependency/Other").superName).isEqualTo("third/Base");
+        }
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts.subList(2, 4).reversed(), new DependencyClassCache(), 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency/Shared").superName).isEqualTo("second/Base");
+        }
+    }
+
+    @Test
+    void testMissingNamesAreRemembered()
+            throws IOException
+    {
+        List<Artifact> artifacts = new ArrayList<>();
+        for (int jar = 0; jar < 10; jar++) {
+            artifacts.add(writeJar("dependency-%s.jar".formatted(jar), "dependency%s/Base".formatted(jar), "java/lang/Object"));
+        }
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, new DependencyClassCache(), 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("missing/Name")).isNull();
+            int openedArchives = resolver.openedArchives();
+            assertThat(openedArchives).isEqualTo(10);
+
+            // Neither a repeated miss nor a hit goes back to the jars for the class list
+            for (int i = 0; i < 100; i++) {
+                assertThat(resolver.resolve("missing/Name")).isNull();
+                assertThat(resolver.resolve("java/lang/Object")).isNull();
+            }
+            assertThat(resolver.resolve("dependency7/Base").name).isEqualTo("dependency7/Base");
+            assertThat(resolver.openedArchives()).isEqualTo(openedArchives);
+        }
+    }
+
+    @Test
+    void testJarsAreIndexedOnDemand()
+            throws IOException
+    {
+        List<Artifact> artifacts = new ArrayList<>();
+        for (int jar = 0; jar < 10; jar++) {
+            artifacts.add(writeJar("dependency-%s.jar".formatted(jar), "dependency%s/Base".formatted(jar), "java/lang/Object"));
+        }
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, new DependencyClassCache(), 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency0/Base")).isNotNull();
+            assertThat(resolver.openedArchives()).isEqualTo(1);
+
+            // No dependency can define a JDK class, so looking one up reads no jar
+            assertThat(resolver.resolve("java/lang/Object")).isNull();
+            assertThat(resolver.openedArchives()).isEqualTo(1);
+
+            // Jars are read in classpath order up to the one holding the class
+            assertThat(resolver.resolve("dependency3/Base")).isNotNull();
+            assertThat(resolver.openedArchives()).isEqualTo(4);
+            assertThat(resolver.resolve("dependency1/Base")).isNotNull();
+            assertThat(resolver.openedArchives()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void testNonJarArtifactsAreSkipped()
+            throws IOException
+    {
+        Artifact pom = new DefaultArtifact("io.trino.test", "bom", "1.0", "import", "pom", null, new DefaultArtifactHandler("pom"));
+        Path pomFile = directory.resolve("bom.pom");
+        write(pomFile, "<project/>".getBytes());
+        pom.setFile(pomFile.toFile());
+        List<Artifact> artifacts = List.of(pom, writeJar("dependency.jar", "dependency/Base", "java/lang/Object"));
+        try (DependencyClassResolver resolver = new DependencyClassResolver(artifacts, new DependencyClassCache(), 16, TestingBuilds.metrics())) {
+            assertThat(resolver.resolve("dependency/Base")).isNotNull();
+        }
+    }
+
+    private Artifact writeJar(String fileName, String className, String superName)
+            throws IOException
+    {
+        Path jar = directory.resolve(fileName);
+        SyntheticClasses.writeJar(jar, Map.of(className, SyntheticClasses.classFile(className, false, superName)));
+        return TestingBuilds.jarArtifact(jar);
+    }
+
+    private static void writeClass(Path classes, String className, String superName)
+            throws IOException
+    {
+        Path file = classes.resolve(className + ".class");
+        createDirectories(file.getParent());
+        write(file, SyntheticClasses.classFile(className, false, superName));
+    }
+
+    private static Artifact directoryArtifact(Path classes)
+    {
+        // A reactor dependency resolved to its output directory
+        Artifact artifact = new DefaultArtifact("io.trino.test", "reactor", "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(classes.toFile());
+        return artifact;
+    }
+}
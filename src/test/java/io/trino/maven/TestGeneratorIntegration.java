@@ -11,18 +11,26 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
+import static java.io.OutputStream.nullOutputStream;
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.delete;
 import static java.nio.file.Files.exists;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.readString;
+import static java.nio.file.Files.setLastModifiedTime;
 import static java.nio.file.Files.walk;
 import static java.util.Collections.list;
 import static java.util.Collections.reverseOrder;
@@ -70,6 +78,38 @@ class TestGeneratorIntegration
         testProjectPackaging("interface-plugin-class", "its.TestPlugin");
     }
 
+    @MavenPluginTest
+    void testAdditionalServices()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("additional-services");
+        maven.forProject(basedir).execute("package").assertErrorFreeLog();
+
+        Path servicesJarFile = basedir.toPath().resolve("target/additional-services-1.0-services.jar");
+        assertThat(descriptor(servicesJarFile, DESCRIPTOR)).isEqualTo("its.ExtensionPlugin\n");
+        assertThat(descriptor(servicesJarFile, "META-INF/services/its.Extension")).isEqualTo("its.FirstExtension\nits.SecondExtension\n");
+    }
+
+    @MavenPluginTest
+    void testServicesJarDoesNotDependOnScanThreads()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("additional-services");
+        Path servicesJarFile = basedir.toPath().resolve("target/additional-services-1.0-services.jar");
+        maven.forProject(basedir)
+                .withCliOptions("-Dproject.build.outputTimestamp=2024-01-01T00:00:00Z", "-Dtrino.plugin.incremental=false", "-Dtrino.plugin.scanThreads=1")
+                .execute("process-classes")
+                .assertErrorFreeLog();
+        byte[] serial = readAllBytes(servicesJarFile);
+
+        maven.forProject(basedir)
+                .withCliOptions("-Dproject.build.outputTimestamp=2024-01-01T00:00:00Z", "-Dtrino.plugin.incremental=false", "-Dtrino.plugin.scanThreads=4")
+                .execute("process-classes")
+                .assertErrorFreeLog()
+                .assertLogText("Wrote its.FirstExtension, its.SecondExtension to");
+        assertThat(readAllBytes(servicesJarFile)).isEqualTo(serial);
+    }
+
     @MavenPluginTest
     void testTransitiveTestScopedDependencyIsBundled()
             throws Exception
@@ -127,6 +167,51 @@ class TestGeneratorIntegration
         assertThat(installDirectory.resolve("basic-1.0.jar")).isRegularFile();
     }
 
+    @MavenPluginTest
+    void testUnchangedServicesJarIsNotRewritten()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("basic");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.incremental=true")
+                .execute("package")
+                .assertErrorFreeLog();
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.incremental=true")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("basic-1.0-services.jar is up to date");
+
+        // The index is opt-in, so a default build scans again
+        maven.forProject(basedir)
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Wrote its.BasicPlugin to");
+    }
+
+    @MavenPluginTest
+    void testDeletedClassInvalidatesServicesJar()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("additional-services");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.incremental=true")
+                .execute("process-classes")
+                .assertErrorFreeLog()
+                .assertLogText("Wrote its.FirstExtension, its.SecondExtension to");
+
+        // Run the goal alone, as compiling would restore the class; the other class files keep their size and time
+        delete(basedir.toPath().resolve("target/classes/its/SecondExtension.class"));
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.incremental=true")
+                .execute("io.trino:trino-maven-plugin:generate-service-descriptor")
+                .assertErrorFreeLog()
+                .assertNoLogText("is up to date")
+                .assertLogText("Wrote its.FirstExtension to");
+        assertThat(descriptor(basedir.toPath().resolve("target/additional-services-1.0-services.jar"), "META-INF/services/its.Extension"))
+                .isEqualTo("its.FirstExtension\n");
+    }
+
     @MavenPluginTest
     void testBundleIsStoredByDefault()
             throws Exception
@@ -150,6 +235,304 @@ class TestGeneratorIntegration
         assertThat(bundleEntryMethods(basedir, "basic")).containsOnly(ZipEntry.DEFLATED);
     }
 
+    @MavenPluginTest
+    void testAdaptiveCompression()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("transitive-test-scope");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.adaptiveCompression=true")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Deflated ");
+
+        // Jars from the repository deflate their entries themselves, while the services jar is mostly headers
+        assertThat(bundleEntryMethods(basedir, "transitive-test-scope")).contains(ZipEntry.STORED, ZipEntry.DEFLATED);
+        assertThat(readString(basedir.toPath().resolve("target/trino-plugin/compression-report.txt")))
+                .contains("not deflated by the jar")
+                .contains("transitive-test-scope-1.0/transitive-test-scope-1.0-services.jar");
+    }
+
+    @MavenPluginTest
+    void testCompressedBundleDoesNotDependOnCompressionThreads()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("transitive-test-scope");
+        Path pluginZipFile = basedir.toPath().resolve("target/transitive-test-scope-1.0.zip");
+        maven.forProject(basedir)
+                .withCliOptions("-Dproject.build.outputTimestamp=2024-01-01T00:00:00Z", "-Dtrino.plugin.compressed=true", "-Dtrino.plugin.compressionThreads=1")
+                .execute("package")
+                .assertErrorFreeLog();
+        byte[] serial = readAllBytes(pluginZipFile);
+
+        // A budget below a single chunk writes every chunk before deflating the next one
+        maven.forProject(basedir)
+                .withCliOptions("-Dproject.build.outputTimestamp=2024-01-01T00:00:00Z", "-Dtrino.plugin.compressed=true", "-Dtrino.plugin.compressionThreads=4", "-Dtrino.plugin.compressionMemory=1")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Created Trino plugin package");
+        assertThat(readAllBytes(pluginZipFile)).isEqualTo(serial);
+
+        try (ZipInputStream zip = new ZipInputStream(newInputStream(pluginZipFile))) {
+            int entries = 0;
+            while (zip.getNextEntry() != null) {
+                zip.transferTo(nullOutputStream());
+                entries++;
+            }
+            assertThat(entries).isGreaterThanOrEqualTo(4);
+        }
+    }
+
+    @MavenPluginTest
+    void testBundleIndex()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("basic");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.indexClasses=true")
+                .execute("package")
+                .assertErrorFreeLog();
+
+        Path pluginZipFile = basedir.toPath().resolve("target/basic-1.0.zip");
+        try (ZipFile zip = new ZipFile(pluginZipFile.toFile())) {
+            ZipEntry entry = zip.getEntry("basic-1.0/" + PluginBundleIndex.ENTRY_NAME);
+            assertThat(entry).isNotNull();
+            try (InputStream in = zip.getInputStream(entry)) {
+                PluginBundleIndex index = PluginBundleIndex.read(in);
+                assertThat(index.hasClasses()).isTrue();
+                assertThat(index.jars()).contains("basic-1.0.jar", "basic-1.0-services.jar");
+                assertThat(index.candidateJars("its.BasicPlugin")).containsExactly("basic-1.0.jar");
+                assertThat(index.jarsForPackage("its")).containsExactly("basic-1.0.jar");
+                assertThat(index.candidateJars("its.Missing")).isEmpty();
+            }
+        }
+    }
+
+    @MavenPluginTest
+    void testBuildMetricsReport()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("basic");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.metrics=true")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Trino plugin build metrics (3 executions");
+
+        Path metricsFile = basedir.toPath().resolve("target/trino-plugin-metrics.json");
+        assertThat(metricsFile).isRegularFile();
+        assertThat(readString(metricsFile))
+                .contains("\"goal\": \"check-spi-dependencies\"")
+                .contains("\"goal\": \"generate-service-descriptor\"")
+                .contains("\"goal\": \"package-trino-plugin\"")
+                .contains("\"classesParsed\"")
+                .contains("\"bytesWritten\"");
+    }
+
+    @MavenPluginTest
+    void testResolutionCacheSummary()
+            throws Exception
+    {
+        // Logged without metrics, at debug level unless a request was served from the cache
+        File basedir = resources.getBasedir("basic");
+        maven.forProject(basedir)
+                .withCliOption("-X")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Trino plugin resolution cache: ");
+    }
+
+    @MavenPluginTest
+    void testBundleDoesNotDependOnChecksumThreads()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("basic");
+        Path pluginZipFile = basedir.toPath().resolve("target/basic-1.0.zip");
+        maven.forProject(basedir)
+                .withCliOptions("-Dproject.build.outputTimestamp=2024-01-01T00:00:00Z", "-Dtrino.plugin.checksumThreads=0")
+                .execute("package")
+                .assertErrorFreeLog();
+        byte[] serial = readAllBytes(pluginZipFile);
+
+        maven.forProject(basedir)
+                .withCliOptions("-Dproject.build.outputTimestamp=2024-01-01T00:00:00Z", "-Dtrino.plugin.checksumThreads=4")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Created Trino plugin package");
+        assertThat(readAllBytes(pluginZipFile)).isEqualTo(serial);
+    }
+
+    @MavenPluginTest
+    void testChecksumCache()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("transitive-test-scope");
+        Path checksumCacheDirectory = basedir.toPath().resolve("checksums");
+        for (int i = 0; i < 2; i++) {
+            maven.forProject(basedir)
+                    .withCliOptions("-Dtrino.plugin.checksumCache=true", "-Dtrino.plugin.checksumCacheDirectory=" + checksumCacheDirectory)
+                    .execute("package")
+                    .assertErrorFreeLog()
+                    .assertLogText("Created Trino plugin package");
+        }
+
+        try (Stream<Path> files = walk(checksumCacheDirectory)) {
+            assertThat(files.filter(file -> file.toString().endsWith(".crc")).count()).isGreaterThanOrEqualTo(2);
+        }
+        // Reading every entry verifies its checksum, including those taken from the cache in the second build
+        Path pluginZipFile = basedir.toPath().resolve("target/transitive-test-scope-1.0.zip");
+        try (ZipInputStream zip = new ZipInputStream(newInputStream(pluginZipFile))) {
+            int entries = 0;
+            while (zip.getNextEntry() != null) {
+                zip.transferTo(nullOutputStream());
+                entries++;
+            }
+            assertThat(entries).isGreaterThanOrEqualTo(4);
+        }
+    }
+
+    @MavenPluginTest
+    void testIncrementalBundleMatchesCleanBuild()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("transitive-test-scope");
+        Path pluginZipFile = basedir.toPath().resolve("target/transitive-test-scope-1.0.zip");
+        Path servicesJarFile = basedir.toPath().resolve("target/transitive-test-scope-1.0-services.jar");
+        for (String compressed : List.of("false", "true")) {
+            String timestamp = "-Dproject.build.outputTimestamp=2024-01-01T00:00:00Z";
+            String compression = "-Dtrino.plugin.compressed=" + compressed;
+            maven.forProject(basedir)
+                    .withCliOptions(timestamp, compression, "-Dtrino.plugin.incremental=false")
+                    .execute("package")
+                    .assertErrorFreeLog();
+            byte[] clean = readAllBytes(pluginZipFile);
+
+            maven.forProject(basedir)
+                    .withCliOptions(timestamp, compression, "-Dtrino.plugin.incremental=true")
+                    .execute("package")
+                    .assertErrorFreeLog();
+            assertThat(readAllBytes(pluginZipFile)).isEqualTo(clean);
+
+            // The services jar is written again, so only its entry is added again
+            setLastModifiedTime(servicesJarFile, FileTime.fromMillis(0));
+            maven.forProject(basedir)
+                    .withCliOptions(timestamp, compression, "-Dtrino.plugin.incremental=true")
+                    .execute("package")
+                    .assertErrorFreeLog()
+                    .assertLogText("entries of the previous Trino plugin package");
+            assertThat(readAllBytes(pluginZipFile)).isEqualTo(clean);
+        }
+    }
+
+    @MavenPluginTest
+    void testExplodedDirectory()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("basic");
+        Path pluginDirectory = basedir.toPath().resolve("plugin");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.explodedDirectory=" + pluginDirectory)
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Laid out Trino plugin in");
+
+        List<String> bundleEntries;
+        try (ZipFile zip = new ZipFile(basedir.toPath().resolve("target/basic-1.0.zip").toFile())) {
+            bundleEntries = list(zip.entries()).stream().map(ZipEntry::getName).sorted().toList();
+        }
+        try (Stream<Path> files = walk(pluginDirectory)) {
+            assertThat(files.filter(Files::isRegularFile).map(file -> pluginDirectory.relativize(file).toString()).sorted().toList())
+                    .isEqualTo(bundleEntries);
+        }
+
+        // Files the bundle no longer has are removed
+        Files.writeString(pluginDirectory.resolve("basic-1.0/stale.jar"), "stale");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.explodedDirectory=" + pluginDirectory)
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("1 removed");
+        assertThat(pluginDirectory.resolve("basic-1.0/stale.jar")).doesNotExist();
+    }
+
+    @MavenPluginTest
+    void testShrinkDependencies()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("transitive-test-scope");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.shrink=true")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Shrunk 4 jars");
+
+        // The plugin reaches none of the classes of its dependencies
+        Path shrunkJarFile = basedir.toPath().resolve("target/trino-plugin/shrunk/org.apache.httpcomponents_httpclient-4.5.14.jar");
+        try (ZipFile jar = new ZipFile(shrunkJarFile.toFile())) {
+            assertThat(list(jar.entries())).extracting(ZipEntry::getName).noneMatch(name -> name.endsWith(".class"));
+        }
+        try (ZipFile zip = new ZipFile(basedir.toPath().resolve("target/transitive-test-scope-1.0.zip").toFile())) {
+            assertThat(zip.getEntry("transitive-test-scope-1.0/org.apache.httpcomponents_httpclient-4.5.14.jar").getSize()).isEqualTo(Files.size(shrunkJarFile));
+        }
+        assertThat(readString(basedir.toPath().resolve("target/trino-plugin/shrink-report.txt")))
+                .contains("removed org/apache/http/impl/client/HttpClients.class");
+
+        // Classes kept by a rule reach commons-logging, which loads its log implementation by name
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.shrink=true")
+                .withCliOption("-Dtrino.plugin.shrinkKeep=org.apache.http.impl.client.HttpClients")
+                .execute("package")
+                .assertLogText("Kept commons-logging_commons-logging-1.2.jar whole");
+        try (ZipFile jar = new ZipFile(shrunkJarFile.toFile())) {
+            assertThat(jar.getEntry("org/apache/http/impl/client/HttpClients.class")).isNotNull();
+        }
+    }
+
+    @MavenPluginTest
+    void testUnusedDependencies()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("transitive-test-scope");
+        maven.forProject(basedir)
+                .execute("compile", "io.trino:trino-maven-plugin:check-unused-dependencies")
+                .assertErrorFreeLog()
+                .assertLogText("[WARNING] Trino plugin dependency org.apache.httpcomponents:httpclient is unused.")
+                .assertLogText("[WARNING] Trino plugin dependency commons-logging:commons-logging is unused.");
+        assertThat(readString(basedir.toPath().resolve("target/trino-plugin/unused-dependencies.txt")))
+                .contains("unused org.apache.httpcomponents:httpcore");
+
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.failOnUnusedDependencies=true")
+                .execute("compile", "io.trino:trino-maven-plugin:check-unused-dependencies")
+                .assertLogText("Trino plugin has 4 unused dependencies: org.apache.httpcomponents:httpclient");
+    }
+
+    @MavenPluginTest
+    void testMergedJar()
+            throws Exception
+    {
+        File basedir = resources.getBasedir("additional-services");
+        maven.forProject(basedir)
+                .withCliOption("-Dtrino.plugin.mergeJars=true")
+                .execute("package")
+                .assertErrorFreeLog()
+                .assertLogText("Merged 2 jars into additional-services-1.0-merged.jar");
+
+        try (ZipFile zip = new ZipFile(basedir.toPath().resolve("target/additional-services-1.0.zip").toFile())) {
+            assertThat(list(zip.entries()).stream().map(ZipEntry::getName).toList())
+                    .containsExactly("additional-services-1.0/additional-services-1.0-merged.jar");
+        }
+        Path mergedJarFile = basedir.toPath().resolve("target/additional-services-1.0-merged.jar");
+        assertThat(descriptor(mergedJarFile, DESCRIPTOR)).isEqualTo("its.ExtensionPlugin\n");
+        assertThat(descriptor(mergedJarFile, "META-INF/services/its.Extension")).isEqualTo("its.FirstExtension\nits.SecondExtension\n");
+        try (JarFile jar = new JarFile(mergedJarFile.toFile())) {
+            assertThat(jar.getManifest()).isNotNull();
+            assertThat(jar.getJarEntry("its/ExtensionPlugin.class")).isNotNull();
+        }
+        assertThat(readString(basedir.toPath().resolve("target/trino-plugin/merge-report.txt")))
+                .contains("service META-INF/services/io.trino.spi.Plugin 1 providers from additional-services-1.0-services.jar");
+    }
+
     private static List<Integer> bundleEntryMethods(File basedir, String projectId)
             throws IOException
     {
@@ -159,6 +542,18 @@ class TestGeneratorIntegration
         }
     }
 
+    private static String descriptor(Path jarFile, String entryName)
+            throws IOException
+    {
+        try (JarFile jar = new JarFile(jarFile.toFile())) {
+            JarEntry entry = jar.getJarEntry(entryName);
+            assertThat(entry).isNotNull();
+            try (InputStream in = jar.getInputStream(entry)) {
+                return new String(toByteArray(in), UTF_8);
+            }
+        }
+    }
+
     private static void deleteRecursively(Path directory)
             throws IOException
     {
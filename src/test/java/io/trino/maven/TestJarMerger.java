@@ -0,0 +1,78 @@
+package io.trino.maven;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.Files.readString;
+import static java.util.Map.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestJarMerger
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLicensesOfEveryJarAreKept()
+            throws IOException
+    {
+        List<Map.Entry<String, Path>> jars = List.of(
+                entry("first.jar", writeJar("first.jar", Map.of("META-INF/LICENSE", "Apache", "META-INF/NOTICE", "First notice", "first/A.class", "A"))),
+                entry("second.jar", writeJar("second.jar", Map.of("META-INF/LICENSE", "Apache", "META-INF/NOTICE", "Second notice", "second/B.class", "B"))),
+                entry("third.jar", writeJar("third.jar", Map.of("META-INF/LICENSE", "MIT", "META-INF/NOTICE", "Second notice"))));
+
+        Path merged = directory.resolve("merged.jar");
+        Path report = directory.resolve("merge-report.txt");
+        try (JarMerger merger = new JarMerger(jars)) {
+            assertThat(merger.conflicts()).isEmpty();
+            merger.write(merged, Optional.empty());
+            merger.writeReport(report);
+            assertThat(merger.licenseFiles()).isEqualTo(4);
+        }
+
+        Map<String, String> contents = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(merged.toFile())) {
+            for (ZipEntry entry : zip.stream().toList()) {
+                contents.put(entry.getName(), new String(zip.getInputStream(entry).readAllBytes(), UTF_8));
+            }
+        }
+        assertThat(contents)
+                .containsEntry("META-INF/LICENSE", "Apache")
+                .containsEntry("META-INF/NOTICE", "First notice")
+                .containsEntry("META-INF/licenses/second.jar/META-INF/NOTICE", "Second notice")
+                .containsEntry("META-INF/licenses/third.jar/META-INF/LICENSE", "MIT")
+                .doesNotContainKeys("META-INF/licenses/second.jar/META-INF/LICENSE", "META-INF/licenses/third.jar/META-INF/NOTICE");
+        assertThat(readString(report))
+                .contains("license META-INF/licenses/third.jar/META-INF/LICENSE from third.jar")
+                .contains("identical META-INF/LICENSE in first.jar, second.jar")
+                .contains("identical META-INF/NOTICE in second.jar, third.jar");
+    }
+
+    private Path writeJar(String fileName, Map<String, String> entries)
+            throws IOException
+    {
+        Path jar = directory.resolve(fileName);
+        try (OutputStream out = newOutputStream(jar);
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
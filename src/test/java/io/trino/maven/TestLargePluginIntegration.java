@@ -0,0 +1,140 @@
+package io.trino.maven;
+
+import io.takari.maven.testing.executor.MavenRuntime;
+import io.takari.maven.testing.executor.MavenRuntime.MavenRuntimeBuilder;
+import io.takari.maven.testing.executor.MavenVersions;
+import io.takari.maven.testing.executor.junit.MavenPluginTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readString;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Builds a generated plugin of 20,000 classes and 200 dependencies, and fails when a goal takes longer than its wall
+ * time budget, as reported by the build metrics, or needs more heap than its budget, which is the maximum heap of the
+ * Maven process it runs in. The budgets are a few times what the goals take on a laptop, so that they only catch
+ * regressions in how the goals scale.
+ * <p>
+ * Every test builds a plugin generated afresh, without incremental builds and with a SPI dependency cache of its own,
+ * so that what a goal is measured on does not depend on the tests that ran before it. A goal that reports no work in
+ * its build metrics fails the test, as its wall time would then measure nothing.
+ */
+@MavenVersions("3.9.14")
+class TestLargePluginIntegration
+{
+    private static final int CLASSES = 20_000;
+    private static final int DEPENDENCIES = 200;
+    private static final int DEPTH = 8;
+    private static final int FILLER_CLASSES = 100;
+
+    private static final Pattern EXECUTION = Pattern.compile(
+            "\"goal\": \"([^\"]+)\",\\s*\"wallNanos\": (\\d+),\\s*\"phases\": \\{[^}]*},\\s*\"counters\": (\\{[^}]*})");
+    private static final Pattern COUNTER = Pattern.compile("\"(\\w+)\": (\\d+)");
+
+    @TempDir
+    Path basedir;
+
+    private final MavenRuntimeBuilder mavenBuilder;
+
+    TestLargePluginIntegration(MavenRuntimeBuilder mavenBuilder)
+    {
+        this.mavenBuilder = mavenBuilder;
+    }
+
+    @BeforeEach
+    void generateFixture()
+            throws IOException
+    {
+        LargePluginFixture.generate(basedir, CLASSES, DEPENDENCIES, DEPTH, FILLER_CLASSES);
+    }
+
+    @MavenPluginTest
+    void testCheckSpiDependencies()
+            throws Exception
+    {
+        execute(new Budget("check-spi-dependencies", "artifactsChecked", 20, "256m"), "validate");
+    }
+
+    @MavenPluginTest
+    void testGenerateServiceDescriptor()
+            throws Exception
+    {
+        execute(new Budget("generate-service-descriptor", "classesParsed", 60, "512m"), "process-classes");
+
+        Path servicesJarFile = basedir.resolve("target/%s-%s-services.jar".formatted(LargePluginFixture.ARTIFACT_ID, LargePluginFixture.VERSION));
+        try (ZipFile zip = new ZipFile(servicesJarFile.toFile())) {
+            assertThat(new String(zip.getInputStream(zip.getEntry("META-INF/services/io.trino.spi.Plugin")).readAllBytes(), UTF_8))
+                    .isEqualTo(LargePluginFixture.PLUGIN_CLASS + "\n");
+            assertThat(zip.getEntry("META-INF/services/spi.Service0")).isNotNull();
+        }
+    }
+
+    @MavenPluginTest
+    void testPackageTrinoPlugin()
+            throws Exception
+    {
+        execute(new Budget("package-trino-plugin", "bytesWritten", 60, "512m"), "package");
+
+        assertThat(basedir.resolve("target/%s-%s.zip".formatted(LargePluginFixture.ARTIFACT_ID, LargePluginFixture.VERSION))).isNotEmptyFile();
+    }
+
+    @MavenPluginTest
+    void testCheckUnusedDependencies()
+            throws Exception
+    {
+        execute(new Budget("check-unused-dependencies", "dependenciesAnalyzed", 60, "512m"), "compile", "io.trino:trino-maven-plugin:check-unused-dependencies");
+
+        assertThat(basedir.resolve("target/trino-plugin/unused-dependencies.txt")).isRegularFile();
+    }
+
+    private void execute(Budget budget, String... goals)
+            throws Exception
+    {
+        String javaVersion = System.getProperty("java.specification.version");
+        MavenRuntime maven = mavenBuilder.forkedBuilder()
+                .withJvmOption("-Xmx" + budget.maxHeap())
+                .withCliOptions("-B", "-Dmaven.compiler.source=" + javaVersion, "-Dmaven.compiler.target=" + javaVersion)
+                .build();
+        maven.forProject(basedir.toFile())
+                .withCliOptions("-Dtrino.plugin.metrics=true", "-Dtrino.plugin.incremental=false")
+                .execute(goals)
+                .assertErrorFreeLog()
+                .assertNoLogText("OutOfMemoryError");
+
+        Map<String, Long> wallNanos = new HashMap<>();
+        long work = 0;
+        Matcher matcher = EXECUTION.matcher(readString(basedir.resolve("target/trino-plugin-metrics.json")));
+        while (matcher.find()) {
+            wallNanos.merge(matcher.group(1), Long.parseLong(matcher.group(2)), Long::sum);
+            Matcher counter = COUNTER.matcher(matcher.group(3));
+            while (matcher.group(1).equals(budget.goal()) && counter.find()) {
+                if (counter.group(1).equals(budget.workCounter())) {
+                    work += Long.parseLong(counter.group(2));
+                }
+            }
+        }
+        assertThat(wallNanos).containsKey(budget.goal());
+        assertThat(work)
+                .as("%s of %s", budget.workCounter(), budget.goal())
+                .isPositive();
+        assertThat(wallNanos.get(budget.goal()))
+                .as("wall time of %s in nanoseconds", budget.goal())
+                .isLessThanOrEqualTo(SECONDS.toNanos(budget.wallSeconds()));
+    }
+
+    /**
+     * The limits of a goal, and a counter of its build metrics that is positive if it did real work.
+     */
+    private record Budget(String goal, String workCounter, long wallSeconds, String maxHeap) {}
+}
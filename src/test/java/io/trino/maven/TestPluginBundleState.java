@@ -0,0 +1,68 @@
+package io.trino.maven;
+
+import io.trino.maven.PluginBundleState.SourceFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.setLastModifiedTime;
+import static java.nio.file.Files.write;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestPluginBundleState
+{
+    private static final FileTime OUTPUT_TIMESTAMP = FileTime.fromMillis(1_704_067_200_000L);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplacedBundleOfSameSizeAndTime()
+            throws IOException
+    {
+        Path file = directory.resolve("First.class");
+        write(file, "class".getBytes(UTF_8));
+        List<SourceFile> sourceFiles = List.of(SourceFile.of("plugin/First.class", file));
+        Path bundle = directory.resolve("plugin.zip");
+        writeBundle(bundle, "plugin/First.class");
+        Path stateFile = directory.resolve("state");
+        new PluginBundleState("configuration", sourceFiles, bundle).write(stateFile);
+
+        PluginBundleState state = PluginBundleState.read(stateFile);
+        assertThat(state.isUpToDate("configuration", sourceFiles, bundle)).isTrue();
+        assertThat(state.reusableEntries("configuration", sourceFiles, bundle)).containsOnlyKeys("plugin/First.class");
+
+        // Another bundle of the same size, written with the same pinned timestamp
+        long size = readAllBytes(bundle).length;
+        writeBundle(bundle, "plugin/Other.class");
+        assertThat(readAllBytes(bundle)).hasSize((int) size);
+        assertThat(getLastModifiedTime(bundle)).isEqualTo(OUTPUT_TIMESTAMP);
+        assertThat(state.isUpToDate("configuration", sourceFiles, bundle)).isFalse();
+        assertThat(state.reusableEntries("configuration", sourceFiles, bundle)).isEmpty();
+    }
+
+    private static void writeBundle(Path bundle, String entryName)
+            throws IOException
+    {
+        try (OutputStream out = newOutputStream(bundle);
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            ZipEntry entry = new ZipEntry(entryName);
+            entry.setLastModifiedTime(OUTPUT_TIMESTAMP);
+            zip.putNextEntry(entry);
+            zip.write("class".getBytes(UTF_8));
+            zip.closeEntry();
+        }
+        setLastModifiedTime(bundle, OUTPUT_TIMESTAMP);
+    }
+}
@@ -0,0 +1,105 @@
+package io.trino.maven;
+
+import org.apache.maven.artifact.Artifact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.trino.maven.Service.Cardinality.MANY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestServiceDescriptorGenerator
+{
+    private static final Service SERVICE = new Service("spi.Service", MANY);
+    private static final Service OTHER_SERVICE = new Service("spi.OtherService", MANY);
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, ClassInfo> classInfoMap = new HashMap<>();
+    private final Set<String> localClasses = new LinkedHashSet<>();
+
+    @Test
+    void testSharedAncestors()
+            throws IOException
+    {
+        Path jar = directory.resolve("dependency.jar");
+        SyntheticClasses.writeJar(jar, Map.of(
+                "spi/Left", SyntheticClasses.interfaceFile("spi/Left", "spi/Service"),
+                "spi/Right", SyntheticClasses.interfaceFile("spi/Right", "spi/Service"),
+                "dependency/Base", SyntheticClasses.classFile("dependency/Base", true, "java/lang/Object", "spi/Left")));
+
+        // Both sides of the diamond lead to the same service
+        addLocalClass(SyntheticClasses.classFile("plugin/Both", false, "java/lang/Object", "spi/Left", "spi/Right"));
+        // Local classes sharing a base class that implements the service through a dependency
+        addLocalClass(SyntheticClasses.classFile("plugin/Shared", true, "dependency/Base"));
+        addLocalClass(SyntheticClasses.classFile("plugin/First", false, "plugin/Shared"));
+        addLocalClass(SyntheticClasses.classFile("plugin/Second", false, "plugin/Shared", "spi/OtherService", "spi/Right"));
+        addLocalClass(SyntheticClasses.classFile("plugin/Unrelated", false, "java/lang/Object"));
+
+        assertThat(findConcreteImplementations(List.of(TestingBuilds.jarArtifact(jar))))
+                .containsExactly(
+                        Map.entry(SERVICE, List.of("plugin.Both", "plugin.First", "plugin.Second")),
+                        Map.entry(OTHER_SERVICE, List.of("plugin.Second")));
+    }
+
+    @Test
+    void testDeepHierarchy()
+            throws IOException
+    {
+        // Far deeper than the thread stack could follow by recursion
+        int depth = 100_000;
+        List<byte[]> classFiles = new ArrayList<>();
+        classFiles.add(SyntheticClasses.classFile("plugin/Level0", false, "java/lang/Object", "spi/Service"));
+        for (int level = 1; level < depth; level++) {
+            classFiles.add(SyntheticClasses.classFile("plugin/Level" + level, false, "plugin/Level" + (level - 1)));
+        }
+        // The deepest class first, so that the first walk goes all the way down
+        for (byte[] classFile : classFiles.reversed()) {
+            addLocalClass(classFile);
+        }
+
+        Map<Service, List<String>> implementations = findConcreteImplementations(List.of());
+        assertThat(implementations.get(SERVICE)).hasSize(depth);
+        assertThat(implementations.get(OTHER_SERVICE)).isEmpty();
+    }
+
+    @Test
+    void testCyclicHierarchy()
+            throws IOException
+    {
+        addLocalClass(SyntheticClasses.classFile("plugin/First", false, "plugin/Second"));
+        addLocalClass(SyntheticClasses.classFile("plugin/Second", false, "plugin/First", "spi/Service"));
+        addLocalClass(SyntheticClasses.classFile("plugin/Self", false, "plugin/Self", "spi/OtherService"));
+
+        assertThat(findConcreteImplementations(List.of()))
+                .containsExactly(
+                        Map.entry(SERVICE, List.of("plugin.First", "plugin.Second")),
+                        Map.entry(OTHER_SERVICE, List.of("plugin.Self")));
+    }
+
+    private void addLocalClass(byte[] classFile)
+            throws IOException
+    {
+        ClassInfo classInfo = ClassHeaderReader.read(new ByteArrayInputStream(classFile));
+        classInfoMap.put(classInfo.name, classInfo);
+        localClasses.add(classInfo.name);
+    }
+
+    private Map<Service, List<String>> findConcreteImplementations(List<Artifact> artifacts)
+            throws IOException
+    {
+        try (DependencyClassResolver dependencies = new DependencyClassResolver(artifacts, new DependencyClassCache(), 16, TestingBuilds.metrics())) {
+            return ServiceDescriptorGenerator.findConcreteImplementations(List.of(SERVICE, OTHER_SERVICE), localClasses, classInfoMap, dependencies);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.trino.maven;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static java.nio.file.Files.delete;
+import static java.nio.file.Files.walk;
+import static java.util.Comparator.reverseOrder;
+
+/**
+ * Stand-ins for the parts of a build that tests and benchmarks call the plugin internals with outside of Maven.
+ */
+final class TestingBuilds
+{
+    private TestingBuilds() {}
+
+    /**
+     * Returns metrics of an execution outside of a build, which are never published.
+     */
+    @SuppressWarnings("deprecation")
+    static BuildMetrics metrics()
+    {
+        MavenSession session = new MavenSession(null, new DefaultRepositorySystemSession(), new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+        session.setCurrentProject(new MavenProject());
+        return BuildMetrics.start(session, "testing");
+    }
+
+    /**
+     * Returns a resolved jar dependency backed by the file, named after it.
+     */
+    static Artifact jarArtifact(Path file)
+    {
+        String name = file.getFileName().toString();
+        Artifact artifact = new DefaultArtifact("io.trino.testing", name.substring(0, name.length() - ".jar".length()), "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(file.toFile());
+        return artifact;
+    }
+
+    static void deleteRecursively(Path directory)
+            throws IOException
+    {
+        try (Stream<Path> paths = walk(directory)) {
+            for (Path path : paths.sorted(reverseOrder()).toList()) {
+                delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package its;
+
+public abstract class AbstractExtension
+        implements Extension
+{}
@@ -0,0 +1,4 @@
+package its;
+
+public interface Extension
+{}
@@ -0,0 +1,7 @@
+package its;
+
+import io.trino.spi.Plugin;
+
+public class ExtensionPlugin
+        implements Plugin
+{}
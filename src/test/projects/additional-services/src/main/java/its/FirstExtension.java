@@ -0,0 +1,5 @@
+package its;
+
+public class FirstExtension
+        extends AbstractExtension
+{}